@@ -4,43 +4,127 @@ package org.sample.nio;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.IByteBufferPool;
 import org.sample.nio.echo.server.EchoHandlerFactory;
 
+import javax.management.JMException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
+import java.net.StandardSocketOptions;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 
 public class Acceptor {
 
     private static Logger logger = LogManager.getLogger();
 
+    private static final int BUF_SZ = 1024;
+
     public static void main(String[] args) throws IOException {
 
-        if (args.length < 1) {
+        if (args.length < 1 || (args.length - 1) % 2 != 0) {
             printUsage();
             return;
         }
 
-        ServerSocketChannel svr = ServerSocketChannel.open();
-        svr.bind(new InetSocketAddress(Integer.parseInt(args[0])));
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .childOption(StandardSocketOptions.TCP_NODELAY, true); //Small echo messages should not wait for Nagle.
+        FlushPolicy flushPolicy = FlushPolicy.END_OF_BATCH;
+
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                String value = args[i + 1];
 
+                switch (args[i]) {
+                    case "--loops":
+                        bootstrap.loops(Integer.parseInt(value));
+                        break;
+                    case "--workers":
+                        bootstrap.workers(Integer.parseInt(value));
+                        break;
+                    case "--listeners":
+                        bootstrap.listeners(Integer.parseInt(value));
+                        break;
+                    case "--backlog":
+                        bootstrap.backlog(Integer.parseInt(value));
+                        break;
+                    case "--mode":
+                        bootstrap.executionMode(Reactor.ExecutionMode.valueOf(value.toUpperCase(Locale.ROOT)));
+                        break;
+                    case "--balance":
+                        bootstrap.balance(Reactor.Balance.valueOf(value.toUpperCase(Locale.ROOT)));
+                        break;
+                    case "--nodelay":
+                        bootstrap.childOption(StandardSocketOptions.TCP_NODELAY, Boolean.parseBoolean(value));
+                        break;
+                    case "--keepalive":
+                        bootstrap.childOption(StandardSocketOptions.SO_KEEPALIVE, Boolean.parseBoolean(value));
+                        break;
+                    case "--rcvbuf":
+                        //Set on listener, so accepted sockets inherit it before their TCP window is negotiated.
+                        bootstrap.option(StandardSocketOptions.SO_RCVBUF, Integer.parseInt(value));
+                        break;
+                    case "--sndbuf":
+                        bootstrap.childOption(StandardSocketOptions.SO_SNDBUF, Integer.parseInt(value));
+                        break;
+                    case "--pool":
+                        bootstrap.bufferPool(newBufferPool(value));
+                        break;
+                    case "--idle-seconds":
+                        bootstrap.idleTimeouts(Long.parseLong(value), 0, TimeUnit.SECONDS);
+                        break;
+                    case "--flush-messages":
+                        flushPolicy = FlushPolicy.everyMessages(Integer.parseInt(value));
+                        break;
+                    case "--flush-bytes":
+                        flushPolicy = FlushPolicy.everyBytes(Integer.parseInt(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+            return;
+        }
 
-        Reactor reactor = new Reactor();
-        reactor.start();
+        Reactor reactor = bootstrap.handlerFactory(new EchoHandlerFactory(flushPolicy))
+                .bind(new InetSocketAddress(Integer.parseInt(args[0])));
 
-        logger.printf(Level.INFO, "reactor is running.");
+        try {
+            reactor.registerMBean("echo-" + args[0]); //Metrics are viewed by JMX clients, e.g. jconsole.
+        } catch (JMException e) {
+            logger.error("Can not register metrics MBean.", e);
+        }
 
-        IOHandlerFactory ioHandlerFactory = new EchoHandlerFactory();
+        logger.printf(Level.INFO, "reactor is running, %s.", bootstrap);
+    }
 
-        SocketChannel sc = null;
-        while ((sc = svr.accept()) != null) {
-            reactor.registerChannel(sc, ioHandlerFactory.createHandler());
+    private static Supplier<IByteBufferPool> newBufferPool(String kind) {
+        IByteBufferPool pool;
+        switch (kind) {
+            case "heap":
+                pool = ByteBufferPoolFactory.newByteBufferPool(BUF_SZ, 1024);
+                break;
+            case "direct":
+                pool = ByteBufferPoolFactory.newDirectByteBufferPool(BUF_SZ, 64 * 1024, 256L * 1024 * 1024);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown buffer pool " + kind);
         }
+
+        IByteBufferPool cached = ByteBufferPoolFactory.newThreadLocalByteBufferPool(pool, BUF_SZ, 32, 64);
+        return () -> cached;
     }
 
     private static void printUsage() {
-        System.out.printf("Usage " + Acceptor.class.getSimpleName() + " <port>");
+        System.out.println("Usage " + Acceptor.class.getSimpleName() + " <port> [--loops n] [--workers n]"
+                + " [--listeners n] [--backlog n] [--mode offload|inline] [--balance round_robin|least_connections]"
+                + " [--nodelay true|false] [--keepalive true|false] [--rcvbuf n] [--sndbuf n] [--pool heap|direct]"
+                + " [--idle-seconds n] [--flush-messages n] [--flush-bytes n]");
     }
 }
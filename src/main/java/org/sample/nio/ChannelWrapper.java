@@ -2,41 +2,96 @@ package org.sample.nio;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.sample.nio.buffer.AdaptiveReadSize;
 import org.sample.nio.buffer.ByteBufferQueue;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class ChannelWrapper {
 
-    private Logger logger = LogManager.getLogger();
+    private static final Logger logger = LogManager.getLogger();
+
+    //Per-connection events, e.g. close, rate limited by its own configuration.
+    static final Logger events = LogManager.getLogger("org.sample.nio.events");
 
     private SelectionKey key;
     private SocketChannel sc;
     private IHandler handler;
+    private SelectorLoop loop;
     private InetSocketAddress remoteAddr = null;
 
     private int intrestingOps = 0;
-    private ByteBuffer inputBuf = ByteBuffer.allocate(1024);
+    private int readyOps = 0;
+
+    //Read buffers are borrowed from pool per read, sized by recent reads of this connection.
+    private final AdaptiveReadSize readSize = new AdaptiveReadSize();
+
+    //Max number of writes per event, so a connection with a lot of output does not starve others.
+    private int writeSpinCount = 16;
+
+    private WaterMark waterMark = WaterMark.DEFAULT;
+    private MemoryBudget budget = null;
+
+    //Bytes of both queues charged to memory budget.
+    private int accounted = 0;
+    private boolean readSuspended = false;
+
+    //Reading stops while input queue is beyond its high water mark, until handler consumes it to low water mark.
+    private boolean inputSuspended = false;
+    private boolean inputShutdown = false;
+
+    //Set once by whoever closes this connection first.
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    //Idle timeouts, 0 disables them. Activity times are written by whoever processes this connection.
+    private long readIdleNanos = 0;
+    private long writeIdleNanos = 0;
+    private long lastReadNanos = 0;
+    private long lastWriteNanos = 0;
+
+    //True while a worker processes this connection, only touched by its loop.
+    private boolean inFlight = false;
+
+    //When a worker completed processing this connection last time.
+    private long completedNanos = 0;
+
+    private long bytesRead = 0;
+    private long bytesWritten = 0;
+
+    //Intrusive node of idle timer in timing wheel of its loop, wheelTick is -1 while not scheduled.
+    ChannelWrapper wheelPrev = null;
+    ChannelWrapper wheelNext = null;
+    long wheelTick = -1;
 
     public ChannelWrapper(SocketChannel sc, IHandler handler) {
         this.sc = sc;
         this.handler = handler;
-        try {
-            this.remoteAddr = (InetSocketAddress) sc.getRemoteAddress();
-        } catch (IOException e) {
-            logger.error("Can not init.", e);
-        }
     }
 
+    /**
+     * @return Remote address, looked up on first call rather than for every accepted connection.
+     */
     public InetSocketAddress getRemoteAddr() {
+        if (remoteAddr == null) {
+            try {
+                this.remoteAddr = (InetSocketAddress) sc.getRemoteAddress();
+            } catch (IOException e) {
+                logger.error("Can not get remote address.", e);
+            }
+        }
         return remoteAddr;
     }
 
+    @Override
+    public String toString() {
+        return String.valueOf(this.getRemoteAddr());
+    }
+
     public SelectionKey getKey() {
         return this.key;
     }
@@ -45,17 +100,177 @@ public class ChannelWrapper {
         this.key = key;
     }
 
+    SocketChannel getChannel() {
+        return this.sc;
+    }
+
+    SelectorLoop getLoop() {
+        return this.loop;
+    }
+
+    void setLoop(SelectorLoop loop) {
+        this.loop = loop;
+    }
+
+    void setWriteSpinCount(int writeSpinCount) {
+        this.writeSpinCount = writeSpinCount;
+    }
+
+    void setBackpressure(WaterMark waterMark, MemoryBudget budget) {
+        this.waterMark = waterMark;
+        this.budget = budget;
+    }
+
+    void setIdleTimeouts(long readIdleNanos, long writeIdleNanos) {
+        this.readIdleNanos = readIdleNanos;
+        this.writeIdleNanos = writeIdleNanos;
+    }
+
+    boolean hasIdleTimeouts() {
+        return this.readIdleNanos > 0 || this.writeIdleNanos > 0;
+    }
+
+    /**
+     * Start idle timeouts from now.
+     * @param nowNanos
+     * @return Deadline of the first idle timeout.
+     */
+    long startIdleTimeouts(long nowNanos) {
+        this.lastReadNanos = this.lastWriteNanos = nowNanos;
+        return this.nextIdleDeadline();
+    }
+
+    /**
+     * @return Number of bytes read from this connection.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return Number of bytes written to this connection.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    void setCompletedNanos(long completedNanos) {
+        this.completedNanos = completedNanos;
+    }
+
+    boolean isInFlight() {
+        return inFlight;
+    }
+
+    void setInFlight(boolean inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Check idleness, its timeout restarts once it is reported.
+     * @param nowNanos
+     * @return null if not idle.
+     */
+    IdleState idleState(long nowNanos) {
+        if (this.readIdleNanos > 0 && nowNanos - this.lastReadNanos >= this.readIdleNanos) {
+            this.lastReadNanos = nowNanos;
+            return IdleState.READER_IDLE;
+        }
+        if (this.writeIdleNanos > 0 && nowNanos - this.lastWriteNanos >= this.writeIdleNanos) {
+            this.lastWriteNanos = nowNanos;
+            return IdleState.WRITER_IDLE;
+        }
+        return null;
+    }
+
+    long nextIdleDeadline() {
+        long deadline = Long.MAX_VALUE;
+        if (this.readIdleNanos > 0) {
+            deadline = this.lastReadNanos + this.readIdleNanos;
+        }
+        if (this.writeIdleNanos > 0) {
+            deadline = Math.min(deadline, this.lastWriteNanos + this.writeIdleNanos);
+        }
+        return deadline;
+    }
+
+    /**
+     * Notify handler of idleness on selector loop, output it queues in response (e.g. a ping) is written out.
+     * @param state
+     * @return true if this connection should be closed.
+     * @throws IOException
+     */
+    boolean fireIdle(IdleState state) throws IOException {
+        if (this.handler.onIdle(state)) {
+            return true;
+        }
+
+        try {
+            this.drainOutput();
+            this.applyBackpressure();
+        } catch (Throwable e) {
+            this.inputShutdown = true;
+            throw e;
+        }
+        this.restoreOps();
+        return false;
+    }
+
+    /**
+     * @return true only for the first caller, which closes this connection.
+     */
+    boolean markClosed() {
+        return this.closed.compareAndSet(false, true);
+    }
+
+    /**
+     * Release buffers and memory budget held by this connection once it is closed.
+     */
+    void dispose() {
+        this.handler.getInputQ().clear();
+        this.handler.getOutputQ().clear();
+        this.charge(0);
+    }
+
     public void prepare() {
+        this.readyOps = this.key.readyOps();
         this.intrestingOps = this.key.interestOps();
         this.key.interestOps(0); //disable all ops
     }
 
+    /**
+     * Process IO events on the selector thread itself, interest ops are left untouched
+     * unless processing changes them.
+     * @throws IOException
+     */
+    void processInline() throws IOException {
+        int ops = this.intrestingOps = this.key.interestOps();
+        this.readyOps = this.key.readyOps();
+
+        this.process();
+
+        if (!this.isDone() && this.intrestingOps != ops) {
+            this.restoreOps();
+        }
+    }
+
+    public boolean isBlocking() {
+        return this.handler.isBlocking();
+    }
+
     public void process() throws IOException {
         try {
-            this.fillInput(); //Read input
-            handler.handle(); //Process input
-            this.drainOutput(); //Write out results
+            if ((this.readyOps & SelectionKey.OP_READ) != 0 && this.isReading()) {
+                this.fillInput(); //Read input
+            }
+            this.handleAndFlush();
+            this.applyBackpressure();
         } catch (Throwable e) {
+            this.inputShutdown = true;
             this.offWriteOps();
             this.offReadOps();
             throw e;
@@ -63,50 +278,147 @@ public class ChannelWrapper {
     }
 
     public boolean isDone() {
-        return this.isWriteOpsOff() && this.isReadOpsOff();
+        return this.inputShutdown && this.isWriteOpsOff();
     }
 
     private void fillInput() throws IOException {
-        int nr = sc.read(inputBuf);
+        ByteBufferQueue inputQ = this.handler.getInputQ();
+        int high = this.waterMark.getHigh();
+        long nr = 0, total = 0;
+
+        //Scatter socket input straight into buffers of input queue, leave the rest in socket beyond high water mark.
+        while (inputQ.size() < high) {
+            int size = readSize.next();
+            if ((nr = inputQ.readFrom(sc, size)) <= 0) {
+                break;
+            }
+
+            readSize.record(nr);
+            total += nr;
+            if (nr < size) {
+                break; //Socket is drained, save a read returns nothing.
+            }
+        }
+
+        if (total > 0) {
+            this.bytesRead += total;
+            this.loop.getMetrics().onRead(total);
+            if (this.readIdleNanos > 0) {
+                this.lastReadNanos = System.nanoTime();
+            }
+        }
 
         if (nr == -1) {
-            logger.info("remote peer closed input stream.");
+            events.info("Remote peer {} closed input stream.", this);
+            this.inputShutdown = true;
             this.offReadOps();
             this.sc.shutdownInput();
             return;
         }
 
+        if (inputQ.size() >= high) {
+            //Otherwise OP_READ fires again with nothing to read into, until handler consumes input.
+            this.inputSuspended = true;
+            this.offReadOps();
+            return;
+        }
+        onReadOps(); //always intrests read ops
+    }
+
+    /*
+      Process input and write out results. A handler flushing by its FlushPolicy returns before it consumes
+      all input, call it again as long as it makes progress and its output has been written out entirely.
+      Otherwise remaining input is picked up by the next event, e.g. a writable one.
+     */
+    private void handleAndFlush() throws IOException {
+        ByteBufferQueue inputQ = this.handler.getInputQ();
+        int nInput;
+
         do {
-            inputBuf.flip();
+            nInput = inputQ.size();
+            handler.handle(); //Process input
+            this.checkInputOverflow();
+            this.drainOutput(); //Write out results
+        } while (!inputQ.isEmpty() && inputQ.size() < nInput && this.handler.getOutputQ().isEmpty());
+    }
 
-            int numEqueue = handler.getInputQ().equeue(inputBuf);
+    //Handler can not consume input reaches high water mark, e.g. a frame is too large, it would never progress.
+    private void checkInputOverflow() throws IOException {
+        if (this.handler.getInputQ().size() >= this.waterMark.getHigh() && this.handler.getOutputQ().isEmpty()) {
+            throw new IOException("input queue exceeds its high water mark " + this.waterMark.getHigh());
+        }
+    }
 
-            if (inputBuf.hasRemaining() && numEqueue == 0) {
-                logger.info("input queue is full.");
+    /*
+      Stop reading when output queue reaches its high water mark, or budget of all connections is exhausted
+      and this one still has output pending. Resume once output drains to low water mark.
+      Output pending always keeps write ops on, so a suspended connection is woken up by its writes.
+      Reading suspended by a full input queue resumes once handler consumes it to low water mark,
+      or earlier when handler has nothing to write and waits for the rest of a frame.
+     */
+    private void applyBackpressure() {
+        int nInput = this.handler.getInputQ().size();
+        int nOutput = this.handler.getOutputQ().size();
+        this.charge(nInput + nOutput);
+
+        boolean exhausted = this.budget != null && this.budget.isExhausted();
+
+        if (this.inputSuspended && (nInput <= this.waterMark.getLow() || (nOutput == 0 && nInput < this.waterMark.getHigh()))) {
+            this.inputSuspended = false;
+            if (this.isReading()) {
+                this.onReadOps();
             }
+        }
 
-            inputBuf.compact();
+        if (!this.readSuspended) {
+            if (nOutput >= this.waterMark.getHigh() || (nOutput > 0 && exhausted)) {
+                this.readSuspended = true;
+                this.offReadOps();
+            }
+        } else if (nOutput <= this.waterMark.getLow() && (nOutput == 0 || !exhausted)) {
+            this.readSuspended = false;
+            if (this.isReading()) {
+                this.onReadOps();
+            }
+        }
+    }
 
-        } while ((nr = sc.read(inputBuf)) > 0);
+    private boolean isReading() {
+        return !this.readSuspended && !this.inputSuspended && !this.inputShutdown;
+    }
 
-        onReadOps(); //always intrests read ops
+    private void charge(int nBytes) {
+        if (this.budget != null && nBytes != this.accounted) {
+            this.budget.add(nBytes - this.accounted);
+            this.accounted = nBytes;
+        }
     }
 
     private void drainOutput() throws IOException {
         ByteBufferQueue outputQ = this.handler.getOutputQ();
-        ByteBuffer output = outputQ.dequeue();
 
-        boolean writePending = output != null;
+        /*
+          Gather output straight from buffers of output queue, until socket send buffer is full or spin limit is hit.
+          Unwritten bytes stay at head of the queue and are resumed when selector reports this socket writable.
+         */
+        long nw = 0;
+        for (int i = 0; i < this.writeSpinCount && !outputQ.isEmpty(); i++) {
+            long n = outputQ.writeTo(sc);
+            if (n == 0) {
+                break;
+            }
+            nw += n;
+        }
 
-        if (writePending) {
-            do {
-                while (output.hasRemaining()) {
-                    sc.write(output);
-                }
-            } while ((output = this.handler.getOutputQ().dequeue()) != null);
+        if (nw > 0) {
+            this.bytesWritten += nw;
+            this.loop.getMetrics().onWritten(nw);
+            if (this.writeIdleNanos > 0) {
+                this.lastWriteNanos = System.nanoTime();
+            }
         }
 
-        if (outputQ.isEmpty() && !writePending) {
+        if (outputQ.isEmpty()) {
             this.offWriteOps();
         } else {
             this.onWriteOps();
@@ -0,0 +1,53 @@
+package org.sample.nio;
+
+/**
+ * When a handler hands encoded output of a batch of decoded messages to its connection for writing.
+ * By default all messages decoded from a read batch are written by one gathering write, a handler
+ * may flush earlier every number of messages or bytes, by returning from handle() once
+ * shouldFlush() says so, its connection writes out the output and calls handle() again.
+ */
+public class FlushPolicy {
+
+    public static final FlushPolicy END_OF_BATCH = new FlushPolicy(0, 0);
+
+    private final int maxMessages;
+    private final int maxBytes;
+
+    private FlushPolicy(int maxMessages, int maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Flush once a batch has encoded this number of messages, or the end of read batch.
+     * @param nMessages
+     * @return
+     */
+    public static FlushPolicy everyMessages(int nMessages) {
+        if (nMessages < 1) {
+            throw new IllegalArgumentException("number of messages should be positive.");
+        }
+        return new FlushPolicy(nMessages, 0);
+    }
+
+    /**
+     * Flush once output queue holds this number of bytes, or the end of read batch.
+     * @param nBytes
+     * @return
+     */
+    public static FlushPolicy everyBytes(int nBytes) {
+        if (nBytes < 1) {
+            throw new IllegalArgumentException("number of bytes should be positive.");
+        }
+        return new FlushPolicy(0, nBytes);
+    }
+
+    /**
+     * @param nMessages Number of messages encoded since handle() is called.
+     * @param nBytes    Number of bytes in output queue.
+     * @return true if handler should return from handle() to get its output written.
+     */
+    public boolean shouldFlush(int nMessages, int nBytes) {
+        return (maxMessages > 0 && nMessages >= maxMessages) || (maxBytes > 0 && nBytes >= maxBytes);
+    }
+}
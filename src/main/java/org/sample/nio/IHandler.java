@@ -11,4 +11,22 @@ public interface IHandler {
 
     public ByteBufferQueue getInputQ();
 
+    /**
+     * Handlers may block (e.g. waiting on a database) declare it here, so they are always
+     * offloaded to worker threads instead of running inline on a selector loop.
+     * @return true if handle() may block its calling thread.
+     */
+    public default boolean isBlocking() {
+        return false;
+    }
+
+    /**
+     * Called on selector loop once its connection has been idle for an idle timeout of reactor,
+     * it must not block. A handler may queue output, e.g. a heartbeat, it is written out afterwards.
+     * @param state
+     * @return true to close the connection, which is the default.
+     */
+    public default boolean onIdle(IdleState state) {
+        return true;
+    }
 }
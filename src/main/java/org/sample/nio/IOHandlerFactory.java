@@ -1,8 +1,26 @@
 package org.sample.nio;
 
+import org.sample.nio.buffer.IByteBufferPool;
+
+import java.util.function.Supplier;
+
 
 public class IOHandlerFactory {
+
+    private Supplier<IByteBufferPool> bufferPool = null;
+
     public IHandler createHandler() {
         return null;
     }
+
+    /**
+     * @return Buffer pool of queues of created handlers, null means default of handlers.
+     */
+    public Supplier<IByteBufferPool> getBufferPool() {
+        return bufferPool;
+    }
+
+    public void setBufferPool(Supplier<IByteBufferPool> bufferPool) {
+        this.bufferPool = bufferPool;
+    }
 }
@@ -0,0 +1,11 @@
+package org.sample.nio;
+
+/**
+ * Kinds of idleness of a connection.
+ */
+public enum IdleState {
+    //Nothing has been read within read idle timeout.
+    READER_IDLE,
+    //Nothing has been written within write idle timeout.
+    WRITER_IDLE
+}
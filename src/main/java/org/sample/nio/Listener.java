@@ -0,0 +1,36 @@
+package org.sample.nio;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A listening socket served by a selector loop, which accepts its connections on OP_ACCEPT.
+ */
+class Listener {
+
+    private final ServerSocketChannel channel;
+    private final IOHandlerFactory factory;
+    private final SocketOptions childOptions;
+
+    Listener(ServerSocketChannel channel, IOHandlerFactory factory, SocketOptions childOptions) {
+        this.channel = channel;
+        this.factory = factory;
+        this.childOptions = childOptions;
+    }
+
+    ServerSocketChannel getChannel() {
+        return channel;
+    }
+
+    IOHandlerFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Apply socket options to an accepted connection.
+     */
+    void configure(SocketChannel sc) throws IOException {
+        childOptions.applyTo(sc);
+    }
+}
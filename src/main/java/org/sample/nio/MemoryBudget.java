@@ -0,0 +1,36 @@
+package org.sample.nio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes queued by all connections of a reactor. Once the budget is exhausted, connections
+ * with pending output stop reading until their output is written out.
+ */
+public class MemoryBudget {
+
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+
+    public MemoryBudget(long limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("memory budget should be positive.");
+        }
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public boolean isExhausted() {
+        return used.get() > limit;
+    }
+
+    void add(long delta) {
+        used.addAndGet(delta);
+    }
+}
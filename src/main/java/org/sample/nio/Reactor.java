@@ -1,115 +1,372 @@
 package org.sample.nio;
 
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.sample.nio.metrics.MetricsSnapshot;
+import org.sample.nio.metrics.ReactorMetrics;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.IOException;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of reactor pattern responses IO events by dispatching
  * concurrent service requests synchronously to the associated request handlers.
+ * <p>
+ * IO events are demultiplexed by one or more selector loops, each accepted channel
+ * is assigned to a single loop for its whole life time.
  */
 public class Reactor {
 
-    private final Logger logger = LogManager.getLogger();
+    /**
+     * Strategies of assigning a new channel to one of selector loops.
+     */
+    public enum Balance {
+        ROUND_ROBIN,
+        LEAST_CONNECTIONS
+    }
 
-    //demultiplexer performs read and write selections.
-    private final Selector sel;
+    /**
+     * Where handlers are executed.
+     * OFFLOAD hands every ready channel to the worker pool, INLINE runs non-blocking handlers
+     * directly on their selector loop (thread-per-core) and only offloads blocking ones.
+     */
+    public enum ExecutionMode {
+        OFFLOAD,
+        INLINE
+    }
 
-    //Avoid deal lock when there is a thread sleeps on alove selector.
-    private final ReentrantReadWriteLock srwLock = new ReentrantReadWriteLock();
+    private static final Logger logger = LogManager.getLogger();
 
     //Worker thread pool for handlers performs non-blocking actions
-    private final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ThreadPoolExecutor pool;
+
+    //Selector loops, each of them runs on its own thread.
+    private final SelectorLoop[] loops;
+
+    private final ExecutorService selectorPool;
+
+    private final Balance balance;
 
-    //Selector worker thread pool
-    private final ExecutorService selectorPool = Executors.newSingleThreadExecutor();
+    private final ExecutionMode mode;
 
-    private volatile Future<?> dispatcher = null;
+    private final AtomicInteger nextLoop = new AtomicInteger();
 
-    //Complete multiple handlers after a single selector wakeup
-    private ArrayBlockingQueue<ChannelWrapper> completedHandlerQueue = new ArrayBlockingQueue<>(10);
+    //Loop serves the next listener, listeners are spread over loops.
+    private int nextListener = 0;
 
-    private Runnable dispatchTask = null;
+    private volatile Future<?>[] dispatchers = null;
 
-    //Abstraction of IO events consumer
-    private Consumer<SelectionKey> handleIOEvent = null;
+    private boolean stopped = false;
+
+    //Listening sockets bound by this reactor, closed once it stops.
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+
+    private volatile WaterMark waterMark = WaterMark.DEFAULT;
+
+    private volatile int writeSpinCount = 16;
+
+    //Budget of bytes queued by all connections, null means unlimited.
+    private volatile MemoryBudget memoryBudget = null;
+
+    //Idle timeouts of connections, 0 disables them.
+    private volatile long readIdleNanos = 0;
+    private volatile long writeIdleNanos = 0;
 
     public Reactor() throws IOException {
-        this.sel = Selector.open();
-
-        /*
-            Core implementation dispatches IO events.
-            1. Recap all completed IO handler(s). Completed means all input of last selection has been read and processed.
-            2. Select next set keys have are ready for operations (Read or/and Write)
-            3. Dispatch ready keys and remove it before next selection.
-         */
-        dispatchTask = () -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                this.drainCompleteHandlerQueue();
-                try {
-                    /*
-                        selectorGuardBarrier is handshake between new channel(s) registration and this selector.
-                        Selector is awaken when there is a new channel registration then waits
-                        until channel competes its registration. Otherwise, that channel may not
-                        be selected due to race conditions of registration thread and this selection thread.
-                     */
-                    selectorGuardBarrier();
-                    this.sel.select();
-                    Set<SelectionKey> keys = this.sel.selectedKeys();
-                    keys.forEach(handleIOEvent);
-                    keys.clear();
-                } catch (Exception e) {
-                    logger.error("Dispatching failed. ", e);
-                    this.stop();
-                }
-            }
-        };
+        this(Runtime.getRuntime().availableProcessors(), Balance.ROUND_ROBIN);
+    }
 
-        handleIOEvent = (key) -> {
+    public Reactor(int numOfLoops, Balance balance) throws IOException {
+        this(numOfLoops, balance, ExecutionMode.OFFLOAD);
+    }
 
-            ChannelWrapper handler = (ChannelWrapper) key.attachment();
+    public Reactor(int numOfLoops, Balance balance, ExecutionMode mode) throws IOException {
+        this(numOfLoops, Runtime.getRuntime().availableProcessors(), balance, mode);
+    }
 
-            handler.prepare(); //Disable all interesting ops, otherwise, it would be fired and picked up by other workers.
+    /**
+     * @param numOfLoops   Number of selector loops, each of them is served by a dedicated thread.
+     * @param numOfWorkers Number of worker threads handlers are offloaded to.
+     * @param balance      How accepted channels are spread over selector loops.
+     * @param mode         Whether handlers run on selector loops or on the worker pool.
+     * @throws IOException
+     */
+    public Reactor(int numOfLoops, int numOfWorkers, Balance balance, ExecutionMode mode) throws IOException {
+        if (numOfLoops < 1) {
+            throw new IllegalArgumentException("At least one selector loop is required.");
+        }
+        if (numOfWorkers < 1) {
+            throw new IllegalArgumentException("At least one worker thread is required.");
+        }
 
-            Runnable task = () -> {
-                try {
-                    handler.process(); //process IO events by a single worker.
-                } catch (Throwable t) {
-                    logger.error("Can not handler received message, force to close its connection.", t);
-                    this.unRegisterChannel(handler);
-                } finally {
-                    addCompleteHandlerQueue(handler);
-                }
-            };
+        this.pool = new ThreadPoolExecutor(numOfWorkers, numOfWorkers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        this.balance = balance;
+        this.mode = mode;
+        this.loops = new SelectorLoop[numOfLoops];
+        for (int i = 0; i < numOfLoops; i++) {
+            this.loops[i] = new SelectorLoop(this);
+        }
+        this.selectorPool = Executors.newFixedThreadPool(numOfLoops);
+    }
 
-            this.pool.submit(task);
-        };
+    public synchronized void start() {
+        if (this.stopped) {
+            throw new IllegalStateException("reactor has been stopped.");
+        }
+        if (this.dispatchers != null) {
+            return;
+        }
+
+        Future<?>[] futures = new Future<?>[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            futures[i] = this.selectorPool.submit(loops[i]);
+        }
+        this.dispatchers = futures;
     }
 
-    public void start() {
-        if (this.dispatcher != null) {
+    /**
+     * Close listeners, stop selector loops and let workers finish queued tasks, then close all connections
+     * and selectors. Threads of this reactor exit afterwards, so a stopped reactor can not be started again.
+     * It must not be called by threads of this reactor, they would wait for themselves.
+     */
+    public synchronized void stop() {
+        if (this.stopped) {
             return;
         }
-        this.dispatcher = this.selectorPool.submit(this.dispatchTask);
+        this.stopped = true;
+
+        for (ServerSocketChannel listener : this.listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                logger.error("not able to close listener.", e);
+            }
+        }
+        this.listeners.clear();
+
+        //Loops are not interrupted, an interrupt closes a channel in the middle of its IO.
+        for (SelectorLoop loop : this.loops) {
+            loop.shutdown();
+        }
+        //Loops stop submitting first, then workers complete what has been submitted.
+        this.selectorPool.shutdown();
+        awaitTermination(this.selectorPool);
+        this.pool.shutdown();
+        awaitTermination(this.pool);
+
+        //Nothing touches channels any more.
+        for (SelectorLoop loop : this.loops) {
+            loop.close();
+        }
+        this.dispatchers = null;
+    }
+
+    public WaterMark getWaterMark() {
+        return waterMark;
+    }
+
+    /**
+     * Water marks of connections registered afterwards.
+     * @param waterMark
+     */
+    public void setWaterMark(WaterMark waterMark) {
+        this.waterMark = waterMark;
+    }
+
+    public int getWriteSpinCount() {
+        return writeSpinCount;
     }
 
-    public void stop() {
-        this.dispatcher.cancel(true);
+    /**
+     * Max number of writes a connection registered afterwards performs per IO event,
+     * it resumes writing on its next writable event.
+     * @param writeSpinCount
+     */
+    public void setWriteSpinCount(int writeSpinCount) {
+        if (writeSpinCount < 1) {
+            throw new IllegalArgumentException("write spin count should be positive.");
+        }
+        this.writeSpinCount = writeSpinCount;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Budget shared by connections registered afterwards, null means unlimited.
+     * @param memoryBudget
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    long getReadIdleNanos() {
+        return readIdleNanos;
+    }
+
+    long getWriteIdleNanos() {
+        return writeIdleNanos;
+    }
+
+    /**
+     * Idle timeouts of connections registered afterwards, an idle connection is closed unless its handler
+     * keeps it by onIdle(). Timeouts are detected with a granularity of 100 milliseconds.
+     * @param readIdle  Max time without reading anything, 0 disables it.
+     * @param writeIdle Max time without writing anything, 0 disables it.
+     * @param unit
+     */
+    public void setIdleTimeouts(long readIdle, long writeIdle, TimeUnit unit) {
+        if (readIdle < 0 || writeIdle < 0) {
+            throw new IllegalArgumentException("idle timeouts should not be negative.");
+        }
+        this.readIdleNanos = unit.toNanos(readIdle);
+        this.writeIdleNanos = unit.toNanos(writeIdle);
+    }
+
+    public int getNumOfLoops() {
+        return loops.length;
+    }
+
+    /**
+     * @return Number of selector wakeups issued by workers completing handlers and by channel registrations.
+     */
+    public long getWakeups() {
+        long n = 0;
+        for (SelectorLoop loop : loops) {
+            n += loop.getMetrics().getWakeups();
+        }
+        return n;
+    }
+
+    /**
+     * @return Number of completed handlers and registrations which did not need a selector wakeup,
+     * because the selector loop was not parked in select().
+     */
+    public long getSavedWakeups() {
+        long n = 0;
+        for (SelectorLoop loop : loops) {
+            n += loop.getMetrics().getSavedWakeups();
+        }
+        return n;
+    }
+
+    /**
+     * @return Metrics of each selector loop.
+     */
+    public List<MetricsSnapshot> getLoopMetrics() {
+        List<MetricsSnapshot> snapshots = new ArrayList<>(loops.length);
+        for (SelectorLoop loop : loops) {
+            snapshots.add(loop.snapshotMetrics());
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return Metrics of all selector loops summed up.
+     */
+    public MetricsSnapshot getMetrics() {
+        return MetricsSnapshot.merge(this.getLoopMetrics(), this.pool.getQueue().size());
+    }
+
+    /**
+     * Expose metrics of this reactor by platform MBean server.
+     * @param name Distinguishes reactors of a process.
+     * @return Name of registered MBean, unregister it once this reactor is stopped.
+     * @throws JMException
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("org.sample.nio:type=Reactor,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new ReactorMetrics(this::getMetrics), objectName);
+        return objectName;
+    }
+
+    /**
+     * Listen on an address, connections are accepted by a selector loop on OP_ACCEPT.
+     * @param address
+     * @param factory Creates a handler per accepted connection.
+     * @return Bound listening socket, closing it stops listening.
+     * @throws IOException
+     */
+    public ServerSocketChannel bind(SocketAddress address, IOHandlerFactory factory) throws IOException {
+        return this.bind(address, factory, 0, 1).get(0);
+    }
+
+    /**
+     * Listen on an address by several sockets bound with SO_REUSEPORT, so kernel spreads incoming connections
+     * over them and each of them is accepted by a different selector loop. Falls back to a single socket where
+     * SO_REUSEPORT is not supported.
+     * @param address
+     * @param factory        Creates a handler per accepted connection.
+     * @param backlog        Max number of pending connections per socket, 0 means default of platform.
+     * @param numOfListeners Number of listening sockets.
+     * @return Bound listening sockets, closing them stops listening.
+     * @throws IOException
+     */
+    public List<ServerSocketChannel> bind(SocketAddress address, IOHandlerFactory factory, int backlog,
+                                          int numOfListeners) throws IOException {
+        return this.bind(address, factory, backlog, numOfListeners, new SocketOptions(), new SocketOptions());
+    }
+
+    /**
+     * Listen as bind(address, factory, backlog, numOfListeners) does, with socket options.
+     * @param address
+     * @param factory        Creates a handler per accepted connection.
+     * @param backlog        Max number of pending connections per socket, 0 means default of platform.
+     * @param numOfListeners Number of listening sockets.
+     * @param options        Options of listening sockets, applied before they are bound.
+     * @param childOptions   Options of accepted sockets, e.g. TCP_NODELAY.
+     * @return Bound listening sockets, closing them stops listening.
+     * @throws IOException
+     */
+    public synchronized List<ServerSocketChannel> bind(SocketAddress address, IOHandlerFactory factory, int backlog,
+                                                       int numOfListeners, SocketOptions options,
+                                                       SocketOptions childOptions) throws IOException {
+        if (numOfListeners < 1) {
+            throw new IllegalArgumentException("At least one listener is required.");
+        }
+        if (!childOptions.isEmpty()) {
+            try (SocketChannel probe = SocketChannel.open()) {
+                childOptions.check(probe.supportedOptions()); //Fail here rather than on every accepted connection.
+            }
+        }
+
+        List<ServerSocketChannel> channels = new ArrayList<>(numOfListeners);
         try {
-            this.pool.awaitTermination(5, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            logger.error("stop dispatcher is interrupted.", e);
+            for (int i = 0; i < numOfListeners; i++) {
+                ServerSocketChannel ssc = ServerSocketChannel.open();
+                channels.add(ssc);
+
+                if (numOfListeners > 1 && !setReusePort(ssc)) {
+                    logger.warn("SO_REUSEPORT is not supported, listen on a single socket.");
+                    numOfListeners = 1;
+                }
+
+                options.applyTo(ssc);
+                ssc.configureBlocking(false);
+                ssc.bind(address, backlog);
+                address = ssc.getLocalAddress(); //Others share the port chosen for the first one, if it is ephemeral.
+                SelectorLoop loop = this.loops[(nextListener++ & Integer.MAX_VALUE) % loops.length];
+                loop.registerListener(new Listener(ssc, factory, childOptions));
+            }
+        } catch (IOException e) {
+            for (ServerSocketChannel ssc : channels) {
+                ssc.close();
+            }
+            throw e;
         }
-        this.dispatcher = null;
+        this.listeners.addAll(channels);
+        return channels;
     }
 
     /**
@@ -120,17 +377,7 @@ public class Reactor {
      * @throws IOException
      */
     public ChannelWrapper registerChannel(SocketChannel sc, IHandler handler) throws IOException {
-        acquireSelectorRLock();
-        try {
-            sc.configureBlocking(false);
-            ChannelWrapper wrapper = new ChannelWrapper(sc, handler);
-            SelectionKey key = sc.register(this.sel, SelectionKey.OP_READ, wrapper);
-            wrapper.setKey(key);
-            logger.printf(Level.INFO, "accept a new connection form %s %n", sc.getRemoteAddress());
-            return wrapper;
-        } finally {
-            releaseSelectorRLock();
-        }
+        return nextLoop().registerChannel(sc, handler);
     }
 
     /**
@@ -138,50 +385,61 @@ public class Reactor {
      * @param wrapper
      */
     public void unRegisterChannel(ChannelWrapper wrapper) {
-        acquireSelectorRLock();
-        try {
-            SelectionKey key = wrapper.getKey();
-            key.cancel();
-            key.channel().close();
-        } catch (IOException e) {
-            logger.error("not able to close channel.", e);
-        } finally {
-            releaseSelectorRLock();
-        }
+        wrapper.getLoop().unRegisterChannel(wrapper);
+    }
+
+    boolean runsInline(ChannelWrapper wrapper) {
+        return this.mode == ExecutionMode.INLINE && !wrapper.isBlocking();
+    }
+
+    void submit(Runnable task) {
+        this.pool.submit(task);
     }
 
     /**
      *  Below are private method of this reactors.
      */
-    private void selectorGuardBarrier() {
-        srwLock.writeLock().lock();
-        srwLock.writeLock().unlock();
-    }
 
-    private void acquireSelectorRLock() {
-        srwLock.readLock().lock();
-        this.sel.wakeup();
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("threads of reactor did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            logger.error("stop dispatcher is interrupted.", e);
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void releaseSelectorRLock() {
-        srwLock.readLock().unlock();
+    //SO_REUSEPORT is only a standard option since Java 9, look it up by name among options of platform.
+    @SuppressWarnings("unchecked")
+    private static boolean setReusePort(ServerSocketChannel ssc) throws IOException {
+        for (SocketOption<?> option : ssc.supportedOptions()) {
+            if ("SO_REUSEPORT".equals(option.name()) && option.type() == Boolean.class) {
+                ssc.setOption((SocketOption<Boolean>) option, true);
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void addCompleteHandlerQueue(ChannelWrapper handler) {
-        while (!completedHandlerQueue.offer(handler)) {
-            ; //completed handler is queued for next selection.
+    private SelectorLoop nextLoop() {
+        if (loops.length == 1) {
+            return loops[0];
         }
-        sel.wakeup();
-    }
 
-    private void drainCompleteHandlerQueue() {
-        ChannelWrapper handler = null;
-        while ((handler = this.completedHandlerQueue.poll()) != null) {
-            if (handler.isDone()) {
-                logger.printf(Level.INFO, "Close a connection %s.", handler.getRemoteAddr());
-                continue;
-            }
-            handler.restoreOps();
+        switch (balance) {
+            case LEAST_CONNECTIONS:
+                SelectorLoop least = loops[0];
+                for (int i = 1; i < loops.length; i++) {
+                    if (loops[i].getNumOfChannels() < least.getNumOfChannels()) {
+                        least = loops[i];
+                    }
+                }
+                return least;
+            case ROUND_ROBIN:
+            default:
+                return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,412 @@
+package org.sample.nio;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sample.nio.metrics.LoopMetrics;
+import org.sample.nio.metrics.MetricsSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A single event loop of the reactor. It owns one selector and dispatches IO events
+ * of all channels registered to it, a reactor shards its connections over several loops.
+ */
+class SelectorLoop implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final Logger events = ChannelWrapper.events;
+
+    //Max number of connections accepted per OP_ACCEPT event, so a connection storm does not starve IO of others.
+    private static final int MAX_ACCEPTS_PER_EVENT = 64;
+
+    //Idle timers expire within a tick, a wheel turns around every 51.2 seconds.
+    private static final long IDLE_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int IDLE_WHEEL_SZ = 512;
+
+    private final Reactor reactor;
+
+    //demultiplexer performs read and write selections.
+    private final Selector sel;
+
+    //Channels waiting to be registered to above selector, only this loop registers them, so no lock is needed.
+    private final ConcurrentLinkedQueue<ChannelWrapper> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    //Listening sockets waiting to be registered for OP_ACCEPT.
+    private final ConcurrentLinkedQueue<Listener> pendingListeners = new ConcurrentLinkedQueue<>();
+
+    //Complete multiple handlers after a single selector wakeup, workers are producers and this loop is the only consumer.
+    private final ConcurrentLinkedQueue<ChannelWrapper> completedHandlerQueue = new ConcurrentLinkedQueue<>();
+
+    //True while this loop is parked (or about to park) in select(), producers only wake it up then.
+    private final AtomicBoolean parked = new AtomicBoolean();
+
+    private final LoopMetrics metrics = new LoopMetrics();
+
+    //Number of channels currently registered to this loop, used by least-connections balancing.
+    private final AtomicInteger numOfChannels = new AtomicInteger();
+
+    //Idle timers of channels registered to this loop, only this loop touches it.
+    private final TimingWheel idleWheel = new TimingWheel(IDLE_WHEEL_SZ, IDLE_TICK_NANOS, System.nanoTime());
+
+    //Thread runs this loop.
+    private volatile Thread thread = null;
+
+    private volatile boolean running = true;
+
+    //Abstraction of IO events consumer
+    private Consumer<SelectionKey> handleIOEvent = null;
+
+    SelectorLoop(Reactor reactor) throws IOException {
+        this.reactor = reactor;
+        this.sel = Selector.open();
+
+        handleIOEvent = (key) -> {
+
+            if (key.attachment() instanceof Listener) {
+                this.accept((Listener) key.attachment());
+                return;
+            }
+
+            ChannelWrapper handler = (ChannelWrapper) key.attachment();
+
+            if (this.reactor.runsInline(handler)) {
+                this.processInline(handler);
+                return;
+            }
+
+            handler.prepare(); //Disable all interesting ops, otherwise, it would be fired and picked up by other workers.
+            handler.setInFlight(true); //Idle timer must not fire while a worker owns the channel.
+
+            long submitted = System.nanoTime();
+            Runnable task = () -> {
+                long started = System.nanoTime();
+                metrics.onQueued(started - submitted);
+                try {
+                    handler.process(); //process IO events by a single worker.
+                } catch (Throwable t) {
+                    logger.error("Can not handler received message, force to close its connection.", t);
+                    this.unRegisterChannel(handler);
+                } finally {
+                    long completed = System.nanoTime();
+                    metrics.onHandled(completed - started);
+                    handler.setCompletedNanos(completed);
+                    addCompleteHandlerQueue(handler);
+                }
+            };
+
+            this.reactor.submit(task);
+        };
+    }
+
+    /*
+        Core implementation dispatches IO events.
+        1. Register all pending listener(s) and channel(s) queued since last selection.
+        2. Recap all completed IO handler(s). Completed means all input of last selection has been read and processed.
+        3. Select next set keys have are ready for operations (Read or/and Write)
+        4. Dispatch ready keys and remove it before next selection.
+        5. Expire idle timers due by now.
+     */
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+
+        while (running && !Thread.currentThread().isInterrupted()) {
+            this.drainPendingRegistrations();
+            this.drainCompleteHandlerQueue();
+            try {
+                this.select();
+                Set<SelectionKey> keys = this.sel.selectedKeys();
+                metrics.onSelect(keys.size());
+                keys.forEach(handleIOEvent);
+                keys.clear();
+
+                if (!idleWheel.isEmpty()) {
+                    idleWheel.advance(System.nanoTime(), this::onIdleTimeout);
+                }
+            } catch (Exception e) {
+                logger.error("Dispatching failed, stop the reactor. ", e);
+
+                //Stopping waits for this loop to exit, so it is left to another thread.
+                new Thread(this.reactor::stop, "reactor-stop").start();
+                return;
+            }
+        }
+    }
+
+    int getNumOfChannels() {
+        return numOfChannels.get();
+    }
+
+    LoopMetrics getMetrics() {
+        return metrics;
+    }
+
+    MetricsSnapshot snapshotMetrics() {
+        return metrics.snapshot(numOfChannels.get(), pendingRegistrations.size(), completedHandlerQueue.size());
+    }
+
+    /**
+     * Queue a channel for registration, it is registered by this loop before its next selection,
+     * so the key of returned wrapper is not available until then.
+     */
+    ChannelWrapper registerChannel(SocketChannel sc, IHandler handler) throws IOException {
+        sc.configureBlocking(false);
+        ChannelWrapper wrapper = new ChannelWrapper(sc, handler);
+        wrapper.setLoop(this);
+        wrapper.setBackpressure(reactor.getWaterMark(), reactor.getMemoryBudget());
+        wrapper.setWriteSpinCount(reactor.getWriteSpinCount());
+        wrapper.setIdleTimeouts(reactor.getReadIdleNanos(), reactor.getWriteIdleNanos());
+        numOfChannels.incrementAndGet();
+
+        pendingRegistrations.offer(wrapper);
+        this.wakeup();
+
+        events.debug("accept a new connection from {}", wrapper);
+        return wrapper;
+    }
+
+    /**
+     * Queue a listening socket for OP_ACCEPT, it is registered by this loop before its next selection.
+     */
+    void registerListener(Listener listener) {
+        pendingListeners.offer(listener);
+        this.wakeup();
+    }
+
+    void unRegisterChannel(ChannelWrapper wrapper) {
+        if (Thread.currentThread() == this.thread) {
+            idleWheel.cancel(wrapper); //Otherwise its timer is dropped once it expires.
+        }
+
+        //Both a worker and this loop may close a connection, only the first one closes and accounts it.
+        if (!wrapper.markClosed()) {
+            return;
+        }
+
+        SelectionKey key = wrapper.getKey();
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            wrapper.getChannel().close();
+        } catch (IOException e) {
+            logger.error("not able to close channel.", e);
+        } finally {
+            numOfChannels.decrementAndGet();
+            wrapper.dispose();
+        }
+    }
+
+    /**
+     * Let this loop exit after its current iteration.
+     */
+    void shutdown() {
+        this.running = false;
+        this.sel.wakeup();
+    }
+
+    /**
+     * Close channels of this loop, those waiting for registration included, and its selector.
+     * Only called once this loop and workers have stopped, so nothing else touches them.
+     */
+    void close() {
+        Listener listener = null;
+        while ((listener = this.pendingListeners.poll()) != null) {
+            this.close(listener.getChannel());
+        }
+
+        ChannelWrapper wrapper = null;
+        while ((wrapper = this.pendingRegistrations.poll()) != null) {
+            this.unRegisterChannel(wrapper);
+        }
+        this.completedHandlerQueue.clear();
+
+        if (!this.sel.isOpen()) {
+            return;
+        }
+        for (SelectionKey key : this.sel.keys()) {
+            if (key.attachment() instanceof ChannelWrapper) {
+                this.unRegisterChannel((ChannelWrapper) key.attachment());
+            } else {
+                this.close(key.channel());
+            }
+        }
+        this.close(this.sel);
+    }
+
+    /**
+     *  Below are private method of this loop.
+     */
+    private void processInline(ChannelWrapper handler) {
+        long started = System.nanoTime();
+        try {
+            handler.processInline();
+        } catch (Throwable t) {
+            logger.error("Can not handler received message, force to close its connection.", t);
+            this.unRegisterChannel(handler);
+            return;
+        } finally {
+            metrics.onHandled(System.nanoTime() - started);
+        }
+
+        if (handler.isDone()) {
+            events.info("Close a connection {}.", handler);
+            this.unRegisterChannel(handler);
+        }
+    }
+
+    //Accept connections in a batch, each of them is handed to a loop chosen by balance of reactor.
+    private void accept(Listener listener) {
+        ServerSocketChannel ssc = listener.getChannel();
+
+        for (int i = 0; i < MAX_ACCEPTS_PER_EVENT; i++) {
+            SocketChannel sc = null;
+            try {
+                if ((sc = ssc.accept()) == null) {
+                    return; //Backlog is drained.
+                }
+                listener.configure(sc);
+                IHandler handler = listener.getFactory().createHandler();
+                if (handler == null) {
+                    throw new IllegalStateException("handler factory created no handler.");
+                }
+                this.reactor.registerChannel(sc, handler);
+            } catch (IOException e) {
+                //e.g. out of file descriptors, leave the rest in backlog until next event.
+                logger.error("Can not accept a new connection.", e);
+                this.close(sc);
+                return;
+            } catch (RuntimeException e) {
+                //Only this connection is dropped, the rest of backlog and other listeners are still served.
+                logger.error("Can not create a handler for a new connection, close it.", e);
+                this.close(sc);
+            }
+        }
+    }
+
+    private void close(Closeable ch) {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException e) {
+            logger.error("not able to close channel.", e);
+        }
+    }
+
+    private void onIdleTimeout(ChannelWrapper wrapper) {
+        if (!wrapper.getChannel().isOpen()) {
+            return; //Closed by others than this loop.
+        }
+
+        long now = System.nanoTime();
+        if (wrapper.isInFlight()) {
+            idleWheel.schedule(wrapper, now + IDLE_TICK_NANOS); //Check again once its worker completes.
+            return;
+        }
+
+        IdleState state = wrapper.idleState(now);
+        if (state != null) {
+            metrics.onIdleTimeout();
+            boolean close = true;
+            try {
+                close = wrapper.fireIdle(state);
+            } catch (Throwable t) {
+                logger.error("Can not handle idle connection, force to close it.", t);
+            }
+
+            if (close) {
+                events.info("Close a connection {}, it is {}.", wrapper, state);
+                this.unRegisterChannel(wrapper);
+                return;
+            }
+        }
+
+        idleWheel.schedule(wrapper, wrapper.nextIdleDeadline());
+    }
+
+    private void select() throws IOException {
+        parked.set(true);
+
+        //Re-check after publishing parked, a handler completed or a channel queued in between would not wake us up.
+        if (!completedHandlerQueue.isEmpty() || !pendingRegistrations.isEmpty() || !pendingListeners.isEmpty()) {
+            parked.set(false);
+            this.sel.selectNow();
+            return;
+        }
+
+        //Wake up for next tick of idle timers, if there is any.
+        this.sel.select(idleWheel.isEmpty() ? 0 : idleWheel.millisToNextTick(System.nanoTime()));
+        parked.set(false);
+    }
+
+    private void drainPendingRegistrations() {
+        Listener listener = null;
+        while ((listener = this.pendingListeners.poll()) != null) {
+            try {
+                listener.getChannel().register(this.sel, SelectionKey.OP_ACCEPT, listener);
+            } catch (ClosedChannelException e) {
+                logger.info("Listener closed before its registration.");
+            }
+        }
+
+        ChannelWrapper wrapper = null;
+        while ((wrapper = this.pendingRegistrations.poll()) != null) {
+            try {
+                wrapper.setKey(wrapper.getChannel().register(this.sel, SelectionKey.OP_READ, wrapper));
+                if (wrapper.hasIdleTimeouts()) {
+                    idleWheel.schedule(wrapper, wrapper.startIdleTimeouts(System.nanoTime()));
+                }
+            } catch (ClosedChannelException e) {
+                events.info("Connection {} closed before its registration.", wrapper);
+                this.unRegisterChannel(wrapper);
+            }
+        }
+    }
+
+    private void addCompleteHandlerQueue(ChannelWrapper handler) {
+        completedHandlerQueue.offer(handler); //completed handler is queued for next selection.
+        this.wakeup();
+    }
+
+    private void wakeup() {
+        //Only the first producer after the loop parks pays for a wakeup, others piggyback on it.
+        if (parked.compareAndSet(true, false)) {
+            sel.wakeup();
+            metrics.onWakeup();
+        } else {
+            metrics.onSavedWakeup();
+        }
+    }
+
+    private void drainCompleteHandlerQueue() {
+        ChannelWrapper handler = null;
+        long now = 0;
+        while ((handler = this.completedHandlerQueue.poll()) != null) {
+            if (now == 0) {
+                now = System.nanoTime(); //Once per batch.
+            }
+            metrics.onCompleted(now - handler.getCompletedNanos());
+            handler.setInFlight(false);
+            if (handler.isDone()) {
+                events.info("Close a connection {}.", handler);
+                this.unRegisterChannel(handler);
+                continue;
+            }
+            handler.restoreOps();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.sample.nio;
+
+import org.sample.nio.buffer.IByteBufferPool;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Configure, start and bind a reactor in one place, e.g.
+ * <pre>
+ * Reactor reactor = new ServerBootstrap()
+ *         .handlerFactory(new EchoHandlerFactory())
+ *         .childOption(StandardSocketOptions.TCP_NODELAY, true)
+ *         .bind(new InetSocketAddress(8080));
+ * </pre>
+ * Options not set keep defaults of reactor and platform.
+ */
+public class ServerBootstrap {
+
+    private IOHandlerFactory handlerFactory = null;
+    private Supplier<IByteBufferPool> bufferPool = null;
+
+    private int backlog = 0;
+    private int numOfListeners = 1;
+    private final SocketOptions options = new SocketOptions();
+    private final SocketOptions childOptions = new SocketOptions();
+
+    private int numOfLoops = Runtime.getRuntime().availableProcessors();
+    private int numOfWorkers = Runtime.getRuntime().availableProcessors();
+    private Reactor.Balance balance = Reactor.Balance.ROUND_ROBIN;
+    private Reactor.ExecutionMode mode = Reactor.ExecutionMode.OFFLOAD;
+
+    private WaterMark waterMark = null;
+    private MemoryBudget memoryBudget = null;
+    private int writeSpinCount = 0;
+    private long readIdleMillis = 0;
+    private long writeIdleMillis = 0;
+
+    public ServerBootstrap handlerFactory(IOHandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
+        return this;
+    }
+
+    /**
+     * Buffer pool of queues of handlers, by default handlers choose their own.
+     * @param bufferPool
+     * @return
+     */
+    public ServerBootstrap bufferPool(Supplier<IByteBufferPool> bufferPool) {
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * @param backlog Max number of pending connections per listener, 0 means default of platform.
+     * @return
+     */
+    public ServerBootstrap backlog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * @param numOfListeners Number of listening sockets bound with SO_REUSEPORT where it is supported.
+     * @return
+     */
+    public ServerBootstrap listeners(int numOfListeners) {
+        this.numOfListeners = numOfListeners;
+        return this;
+    }
+
+    /**
+     * Option of listening sockets, e.g. SO_REUSEADDR or SO_RCVBUF inherited by accepted sockets.
+     */
+    public <T> ServerBootstrap option(SocketOption<T> option, T value) {
+        this.options.set(option, value);
+        return this;
+    }
+
+    /**
+     * Option of accepted sockets, e.g. TCP_NODELAY, SO_SNDBUF or SO_KEEPALIVE.
+     */
+    public <T> ServerBootstrap childOption(SocketOption<T> option, T value) {
+        this.childOptions.set(option, value);
+        return this;
+    }
+
+    public ServerBootstrap loops(int numOfLoops) {
+        this.numOfLoops = numOfLoops;
+        return this;
+    }
+
+    public ServerBootstrap workers(int numOfWorkers) {
+        this.numOfWorkers = numOfWorkers;
+        return this;
+    }
+
+    public ServerBootstrap balance(Reactor.Balance balance) {
+        this.balance = balance;
+        return this;
+    }
+
+    public ServerBootstrap executionMode(Reactor.ExecutionMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public ServerBootstrap waterMark(WaterMark waterMark) {
+        this.waterMark = waterMark;
+        return this;
+    }
+
+    public ServerBootstrap memoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    public ServerBootstrap writeSpinCount(int writeSpinCount) {
+        this.writeSpinCount = writeSpinCount;
+        return this;
+    }
+
+    /**
+     * @param readIdle  Max time a connection reads nothing before it is closed, 0 disables it.
+     * @param writeIdle Max time a connection writes nothing before it is closed, 0 disables it.
+     * @param unit
+     * @return
+     */
+    public ServerBootstrap idleTimeouts(long readIdle, long writeIdle, TimeUnit unit) {
+        this.readIdleMillis = unit.toMillis(readIdle);
+        this.writeIdleMillis = unit.toMillis(writeIdle);
+        return this;
+    }
+
+    /**
+     * Create and start a reactor, then listen on address.
+     * @param address
+     * @return Running reactor.
+     * @throws IOException
+     */
+    public Reactor bind(SocketAddress address) throws IOException {
+        Reactor reactor = this.newReactor();
+        reactor.start();
+
+        try {
+            this.bind(reactor, address);
+        } catch (IOException | RuntimeException e) {
+            reactor.stop();
+            throw e;
+        }
+        return reactor;
+    }
+
+    /**
+     * Listen on address by a reactor created elsewhere, e.g. to serve several ports.
+     * @param reactor
+     * @param address
+     * @return Bound listening sockets.
+     * @throws IOException
+     */
+    public List<ServerSocketChannel> bind(Reactor reactor, SocketAddress address) throws IOException {
+        if (handlerFactory == null) {
+            throw new IllegalStateException("handler factory is not set.");
+        }
+        if (bufferPool != null) {
+            handlerFactory.setBufferPool(bufferPool);
+        }
+        return reactor.bind(address, handlerFactory, backlog, numOfListeners, options, childOptions);
+    }
+
+    /**
+     * @return Reactor configured by this bootstrap, not started yet.
+     * @throws IOException
+     */
+    public Reactor newReactor() throws IOException {
+        Reactor reactor = new Reactor(numOfLoops, numOfWorkers, balance, mode);
+        if (waterMark != null) {
+            reactor.setWaterMark(waterMark);
+        }
+        if (memoryBudget != null) {
+            reactor.setMemoryBudget(memoryBudget);
+        }
+        if (writeSpinCount > 0) {
+            reactor.setWriteSpinCount(writeSpinCount);
+        }
+        reactor.setIdleTimeouts(readIdleMillis, writeIdleMillis, TimeUnit.MILLISECONDS);
+        return reactor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("loops=%d workers=%d balance=%s mode=%s listeners=%d backlog=%d options=%s childOptions=%s",
+                numOfLoops, numOfWorkers, balance, mode, numOfListeners, backlog, options, childOptions);
+    }
+}
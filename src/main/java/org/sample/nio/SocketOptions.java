@@ -0,0 +1,58 @@
+package org.sample.nio;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.nio.channels.NetworkChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Socket options applied to a channel in the order they are set, e.g. TCP_NODELAY of accepted sockets.
+ */
+public class SocketOptions {
+
+    private final Map<SocketOption<?>, Object> options = new LinkedHashMap<>();
+
+    public <T> SocketOptions set(SocketOption<T> option, T value) {
+        if (value == null) {
+            options.remove(option);
+        } else {
+            options.put(option, value);
+        }
+        return this;
+    }
+
+    public Map<SocketOption<?>, Object> asMap() {
+        return Collections.unmodifiableMap(options);
+    }
+
+    public boolean isEmpty() {
+        return options.isEmpty();
+    }
+
+    /**
+     * @param supported Options supported by a kind of channel.
+     * @throws UnsupportedOperationException if any option is not supported.
+     */
+    void check(Set<SocketOption<?>> supported) {
+        for (SocketOption<?> option : options.keySet()) {
+            if (!supported.contains(option)) {
+                throw new UnsupportedOperationException("socket option " + option.name() + " is not supported.");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void applyTo(NetworkChannel channel) throws IOException {
+        for (Map.Entry<SocketOption<?>, Object> entry : options.entrySet()) {
+            channel.setOption((SocketOption<Object>) entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return options.toString();
+    }
+}
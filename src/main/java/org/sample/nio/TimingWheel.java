@@ -0,0 +1,130 @@
+package org.sample.nio;
+
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel of idle timers of connections served by a selector loop, so only the loop
+ * touches it. Timers are linked into buckets through fields of ChannelWrapper, scheduling and
+ * cancelling are O(1) and allocation free, a tick only visits the bucket it is due.
+ * A timer expires within one tick after its deadline.
+ */
+class TimingWheel {
+
+    private final ChannelWrapper[] buckets;
+    private final int mask;
+    private final long tickNanos;
+    private final long startNanos;
+
+    //Next tick to be processed, ticks are counted from startNanos.
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * @param numOfBuckets Rounded up to a power of two.
+     * @param tickNanos
+     * @param startNanos
+     */
+    TimingWheel(int numOfBuckets, long tickNanos, long startNanos) {
+        int n = Integer.highestOneBit(Math.max(numOfBuckets - 1, 1)) << 1;
+        this.buckets = new ChannelWrapper[n];
+        this.mask = n - 1;
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Schedule or re-schedule timer of a connection.
+     * @param wrapper
+     * @param deadlineNanos
+     */
+    void schedule(ChannelWrapper wrapper, long deadlineNanos) {
+        this.cancel(wrapper);
+
+        //Round up and never into a tick already processed, so a timer never fires early or gets lost.
+        long tick = Math.max((deadlineNanos - startNanos + tickNanos - 1) / tickNanos, currentTick);
+        int idx = (int) (tick & mask);
+
+        wrapper.wheelTick = tick;
+        wrapper.wheelPrev = null;
+        wrapper.wheelNext = buckets[idx];
+        if (buckets[idx] != null) {
+            buckets[idx].wheelPrev = wrapper;
+        }
+        buckets[idx] = wrapper;
+        size++;
+    }
+
+    void cancel(ChannelWrapper wrapper) {
+        if (wrapper.wheelTick < 0) {
+            return; //Not scheduled.
+        }
+
+        if (wrapper.wheelPrev != null) {
+            wrapper.wheelPrev.wheelNext = wrapper.wheelNext;
+        } else {
+            buckets[(int) (wrapper.wheelTick & mask)] = wrapper.wheelNext;
+        }
+        if (wrapper.wheelNext != null) {
+            wrapper.wheelNext.wheelPrev = wrapper.wheelPrev;
+        }
+
+        wrapper.wheelPrev = wrapper.wheelNext = null;
+        wrapper.wheelTick = -1;
+        size--;
+    }
+
+    /**
+     * Process all ticks up to now, expired timers are removed before they are passed to callback,
+     * so it may re-schedule them.
+     * @param nowNanos
+     * @param expired
+     */
+    void advance(long nowNanos, Consumer<ChannelWrapper> expired) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        if (targetTick < currentTick) {
+            return;
+        }
+
+        //Each bucket is visited once at most, however far behind the wheel is.
+        ChannelWrapper due = null;
+        long lastTick = Math.min(targetTick, currentTick + mask);
+        for (long tick = currentTick; tick <= lastTick; tick++) {
+            ChannelWrapper node = buckets[(int) (tick & mask)];
+
+            while (node != null) {
+                ChannelWrapper next = node.wheelNext;
+                if (node.wheelTick <= targetTick) {
+                    this.cancel(node);
+                    node.wheelNext = due; //Collect into a detached list.
+                    due = node;
+                }
+                node = next;
+            }
+        }
+        currentTick = targetTick + 1;
+
+        while (due != null) {
+            ChannelWrapper next = due.wheelNext;
+            due.wheelNext = null;
+            expired.accept(due);
+            due = next;
+        }
+    }
+
+    /**
+     * @param nowNanos
+     * @return Milliseconds till next tick, at least 1.
+     */
+    long millisToNextTick(long nowNanos) {
+        long nanos = startNanos + currentTick * tickNanos - nowNanos;
+        return Math.max(1, (nanos + 999_999) / 1_000_000);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
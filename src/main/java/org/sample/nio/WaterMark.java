@@ -0,0 +1,30 @@
+package org.sample.nio;
+
+/**
+ * Per-connection limits of queued bytes. A connection stops reading once its output queue reaches
+ * the high mark and resumes when the queue drains to the low mark, its input queue never
+ * grows beyond the high mark.
+ */
+public class WaterMark {
+
+    public static final WaterMark DEFAULT = new WaterMark(32 * 1024, 64 * 1024);
+
+    private final int low;
+    private final int high;
+
+    public WaterMark(int low, int high) {
+        if (low < 0 || high < 1 || low > high) {
+            throw new IllegalArgumentException("water marks should be 0 <= low <= high and high > 0.");
+        }
+        this.low = low;
+        this.high = high;
+    }
+
+    public int getLow() {
+        return low;
+    }
+
+    public int getHigh() {
+        return high;
+    }
+}
@@ -0,0 +1,40 @@
+package org.sample.nio.buffer;
+
+/**
+ * Predict how many bytes next read of a connection needs from sizes of its recent reads.
+ * Sizes are powers of two between 64 B and 64 KB, a read fills the predicted size grows it
+ * by two steps at once, two reads in a row fit the next smaller size shrink it by one step.
+ */
+public class AdaptiveReadSize {
+
+    private static final int MIN_SHIFT = 6;  //64 B
+    private static final int MAX_SHIFT = 16; //64 KB
+
+    private byte shift = 10;
+    private boolean shrinkPending = false;
+
+    /**
+     * @return Number of bytes next read should be able to take.
+     */
+    public int next() {
+        return 1 << shift;
+    }
+
+    /**
+     * Record number of bytes the last read returned.
+     * @param nRead
+     */
+    public void record(long nRead) {
+        if (nRead >= next()) {
+            shift = (byte) Math.min(shift + 2, MAX_SHIFT);
+            shrinkPending = false;
+        } else if (shift > MIN_SHIFT && nRead <= 1 << (shift - 1)) {
+            if (shrinkPending) {
+                shift--;
+            }
+            shrinkPending = !shrinkPending;
+        } else {
+            shrinkPending = false;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.sample.nio.buffer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detect pooled buffers garbage-collected without being released.
+ * A sample of tracked objects (0 - 100 percent) records its allocation call site and is watched
+ * by a phantom reference, leaks are reported when later tracking polls the reference queue.
+ * Objects not sampled cost a random number only.
+ */
+public class ByteBufferLeakDetector {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * System property sets sampling rate of default detector in percent, 1 if absent.
+     */
+    public static final String SAMPLING_RATE_PROPERTY = "org.sample.nio.buffer.leakDetection.samplingRate";
+
+    private static final ByteBufferLeakDetector DEFAULT = new ByteBufferLeakDetector(
+            Integer.getInteger(SAMPLING_RATE_PROPERTY, 1));
+
+    /**
+     * Handle of a tracked object, close it once the object is properly released.
+     */
+    public final class Tracker extends PhantomReference<Object> {
+        private final Throwable site;
+
+        private Tracker(Object referent) {
+            super(referent, refQueue);
+            this.site = new Throwable("Allocated at");
+        }
+
+        public void close() {
+            if (trackers.remove(this)) {
+                this.clear();
+            }
+        }
+    }
+
+    private final int samplingRate;
+
+    private final ReferenceQueue<Object> refQueue = new ReferenceQueue<>();
+
+    //Keep trackers reachable until their objects are released or collected.
+    private final Set<Tracker> trackers = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder leaks = new LongAdder();
+
+    public ByteBufferLeakDetector(int samplingRate) {
+        if (samplingRate < 0 || samplingRate > 100) {
+            throw new IllegalArgumentException("sampling rate should be a percentage between 0 and 100.");
+        }
+        this.samplingRate = samplingRate;
+    }
+
+    public static ByteBufferLeakDetector getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Start tracking an object if it is sampled.
+     * @param referent
+     * @return Tracker to close on release, null if the object is not sampled.
+     */
+    public Tracker track(Object referent) {
+        if (samplingRate == 0) {
+            return null;
+        }
+
+        this.poll();
+
+        if (samplingRate < 100 && ThreadLocalRandom.current().nextInt(100) >= samplingRate) {
+            return null;
+        }
+
+        Tracker tracker = new Tracker(referent);
+        trackers.add(tracker);
+        return tracker;
+    }
+
+    /**
+     * Report objects have been collected without release since last poll.
+     * @return Number of leaks found by this poll.
+     */
+    public int poll() {
+        int n = 0;
+        Tracker tracker = null;
+        while ((tracker = (Tracker) refQueue.poll()) != null) {
+            if (trackers.remove(tracker)) {
+                n++;
+                leaks.increment();
+                logger.error("LEAK: a pooled buffer was garbage-collected without being released.", tracker.site);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return Total number of leaks reported.
+     */
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+}
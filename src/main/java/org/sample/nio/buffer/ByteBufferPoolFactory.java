@@ -6,4 +6,28 @@ public class ByteBufferPoolFactory {
     public static IByteBufferPool newByteBufferPool (int bufSize, int maxNumOfBufs) {
         return new LeakyByteBufferPool(bufSize, maxNumOfBufs);
     }
+
+    /**
+     * Pool of direct buffers carved from slabs in power-of-two size classes.
+     * @param bufSize Size of buffers returned by acquire().
+     * @param maxBufSize Largest size class, larger requests get unpooled heap buffers.
+     * @param maxMemory Cap of direct memory reserved by this pool in bytes.
+     * @return
+     */
+    public static SlabByteBufferPool newDirectByteBufferPool(int bufSize, int maxBufSize, long maxMemory) {
+        return new SlabByteBufferPool(bufSize, maxBufSize, maxMemory);
+    }
+
+    /**
+     * Pool caches buffers per thread in front of a shared pool, threads exchange buffers with each other
+     * in batches of magazineSize buffers.
+     * @param shared Pool serves buffers no thread has cached.
+     * @param bufSize Size of cached buffers, must be the size shared pool returns from acquire().
+     * @param magazineSize Number of buffers cached per thread.
+     * @param maxMagazines Number of full magazines shared between threads.
+     * @return
+     */
+    public static ThreadLocalByteBufferPool newThreadLocalByteBufferPool(IByteBufferPool shared, int bufSize, int magazineSize, int maxMagazines) {
+        return new ThreadLocalByteBufferPool(shared, bufSize, magazineSize, maxMagazines);
+    }
 }
@@ -1,41 +1,81 @@
 package org.sample.nio.buffer;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.function.Supplier;
 
 
 public class ByteBufferQueue {
 
-    //A zero length buffer to eliminate null check.
-    private final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    //Max number of segments passed to a single scattering read or gathering write.
+    private static final int MAX_IO_SEGMENTS = 16;
+
+    //Number of bytes a scattering read is offered if its caller does not tell.
+    private static final int DEFAULT_READ_SZ = 2048;
+
+    //Segments have fewer remaining bytes than this are copied rather than handed over by transferTo.
+    private static final int MIN_TRANSFER_SEGMENT = 256;
+
+    //Segment arrays for vectored IO, shared by all queues served by the same thread.
+    private static final ThreadLocal<ByteBuffer[]> IO_SEGMENTS = ThreadLocal.withInitial(() -> new ByteBuffer[MAX_IO_SEGMENTS]);
+
+    //Limits of queued segments flipped for a gathering write, restored once it returns.
+    private static final ThreadLocal<int[]> IO_LIMITS = ThreadLocal.withInitial(() -> new int[MAX_IO_SEGMENTS]);
+
+    //Initial number of slots of segment ring.
+    private static final int INITIAL_SEGMENTS = 4;
+
+    //A ring grown beyond this by a burst is dropped once it drains, rather than held by an idle queue.
+    private static final int MAX_RETAINED_SEGMENTS = 64;
 
-    private Logger logger = LogManager.getLogger();
+    //A zero length buffer to eliminate null check, shared by all queues as nothing can be put into it.
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    //Pool of queues created without one, buffers are left to garbage collector.
+    private static final IByteBufferPool HEAP_POOL = new IByteBufferPool() {
+        @Override
+        public ByteBuffer acquire() {
+            return ByteBuffer.allocate(512);
+        }
+
+        @Override
+        public void release(ByteBuffer buf) {
+
+        }
+    };
+
+    private static final ByteBufferLeakDetector LEAK_DETECTOR = ByteBufferLeakDetector.getDefault();
 
     private IByteBufferPool bufPool = null;
 
+    /*
+      Trackers of sampled pooled segments, they follow their segments to other queues and are closed on release,
+      so a queue dropped without clear() is reported once it is collected. Created with the first sampled segment.
+     */
+    private IdentityHashMap<ByteBuffer, ByteBufferLeakDetector.Tracker> trackers = null;
+
     private ByteBuffer active = EMPTY_BUFFER;
 
-    private LinkedList<ByteBuffer> fifoBufList = new LinkedList<>();
+    //Exhausted segment still referenced by the last view returned from dequeueSlice.
+    private ByteBuffer retired = null;
+
+    /*
+      Queued segments in write mode, in a ring of slots from head. The ring is allocated with the first segment,
+      so an idle connection holds no more than fields of its queues.
+     */
+    private ByteBuffer[] segments = null;
+    private int head = 0;
+    private int nSegments = 0;
 
     private int bufferedBytes = 0;
 
     public ByteBufferQueue() {
-
-        bufPool = new IByteBufferPool() {
-            @Override
-            public ByteBuffer acquire() {
-                return ByteBuffer.allocate(512);
-            }
-
-            @Override
-            public void release(ByteBuffer buf) {
-
-            }
-        };
+        this.bufPool = HEAP_POOL;
     }
 
     public ByteBufferQueue(Supplier<IByteBufferPool> supplier) {
@@ -53,6 +93,146 @@ public class ByteBufferQueue {
         return nBuffered;
     }
 
+    /**
+     * Copy bytes of an array to tail segment(s) of this queue, so callers need not wrap it.
+     * @param src
+     * @param offset
+     * @param length
+     * @return Number of copied bytes.
+     */
+    public int equeue(byte[] src, int offset, int length) {
+        int n = 0;
+
+        while (n < length) {
+            ByteBuffer last = this.peekLast();
+            if (last == null || !last.hasRemaining()) {
+                this.addLast(last = this.allocBuffer());
+            }
+
+            int ncopy = Math.min(length - n, last.remaining());
+            last.put(src, offset + n, ncopy);
+            n += ncopy;
+        }
+
+        this.bufferedBytes += n;
+        return n;
+    }
+
+    /**
+     * Append a single byte to tail segment of this queue, e.g. a byte of a header field.
+     * @param b
+     * @return Number of copied bytes, always 1.
+     */
+    public int equeue(byte b) {
+        ByteBuffer last = this.peekLast();
+        if (last == null || !last.hasRemaining()) {
+            this.addLast(last = this.allocBuffer());
+        }
+
+        last.put(b);
+        this.bufferedBytes++;
+        return 1;
+    }
+
+    /**
+     * Append a buffer to this queue without copying its bytes, the queue takes the ownership of it.
+     * Caller must not touch the buffer afterwards, it may be recycled by buffer pool of this queue.
+     * Nothing is written beyond its limit, bytes queued afterwards go to buffers of this queue.
+     * A buffer not starting from zero is queued by a slice, which is not recycled by slab pools.
+     * @param segment Buffer in read mode, bytes between its position and limit are queued.
+     * @return Number of queued bytes.
+     */
+    public int equeueSegment(ByteBuffer segment) {
+        int n = segment.remaining();
+        if (n == 0) return 0;
+
+        //Queued buffers are kept in write mode, bytes start from index zero and it has no free space.
+        ByteBuffer seg = segment.position() == 0 ? segment : segment.slice();
+        seg.position(seg.limit());
+
+        this.addLast(seg);
+        this.bufferedBytes += n;
+        return n;
+    }
+
+    /**
+     * Move up to length bytes from head of this queue to tail of dest queue.
+     * Whole segments are handed over to dest without copying, so dest releases them to its pool.
+     * Small ones and those partly read are copied, they stay with this queue until released.
+     * @param dest
+     * @param length
+     * @return Number of moved bytes.
+     */
+    public int transferTo(ByteBufferQueue dest, int length) {
+        this.releaseRetired();
+
+        int nBytesToMove = Math.min(bufferedBytes, length), n = nBytesToMove;
+
+        while (n > 0 && (active = this.nextBufferToRead()).hasRemaining()) {
+            int remaining = active.remaining();
+
+            if (remaining <= n && remaining >= MIN_TRANSFER_SEGMENT && active.position() == 0) {
+                dest.equeueSegment(active);
+                this.handOverTracker(active, dest);
+                this.active = EMPTY_BUFFER;
+                n -= remaining;
+                bufferedBytes -= remaining;
+                continue;
+            }
+
+            int ncopy = Math.min(n, remaining);
+            int limit = active.limit();
+            active.limit(active.position() + ncopy);
+            dest.equeue(active);
+            active.limit(limit);
+
+            n -= ncopy;
+            bufferedBytes -= ncopy;
+
+            if (!active.hasRemaining()) {
+                this.active = this.freeBuffer(this.active);
+            }
+        }
+
+        return nBytesToMove;
+    }
+
+    /**
+     * Return a read-only view of up to length bytes without copying when they are held by a single
+     * segment, otherwise falls back to a copy as dequeue(int) does.
+     * The view is only valid until next dequeue, skip, transfer or write of this queue.
+     * @param length
+     * @return
+     */
+    public ByteBuffer dequeueSlice(int length) {
+        if (this.isEmpty()) {
+            return null;
+        }
+
+        this.releaseRetired();
+
+        int nBytesToDQ = Math.min(bufferedBytes, length);
+
+        active = this.nextBufferToRead();
+        if (active.remaining() < nBytesToDQ) {
+            return this.dequeue(nBytesToDQ);
+        }
+
+        ByteBuffer view = active.asReadOnlyBuffer();
+        view.limit(view.position() + nBytesToDQ);
+
+        active.position(active.position() + nBytesToDQ);
+        bufferedBytes -= nBytesToDQ;
+
+        if (!active.hasRemaining()) {
+            //Keep the segment away from pool while the view is alive.
+            this.retired = this.active;
+            this.active = EMPTY_BUFFER;
+        }
+
+        return view;
+    }
+
     /**
      * Return a buffer with all queued bytes.
      * @return
@@ -72,6 +252,8 @@ public class ByteBufferQueue {
             return null;
         }
 
+        this.releaseRetired();
+
         int nBytesToDQ = Math.min(bufferedBytes, length);
 
         ByteBuffer retBuf = ByteBuffer.allocate(nBytesToDQ);
@@ -91,31 +273,243 @@ public class ByteBufferQueue {
         return retBuf;
     }
 
+    /**
+     * Copy up to length bytes from head of this queue to an array of caller, so a reused array
+     * takes them without allocation.
+     * @param dst
+     * @param offset
+     * @param length
+     * @return Number of dequeued bytes.
+     */
+    public int dequeue(byte[] dst, int offset, int length) {
+        this.releaseRetired();
+
+        int nBytesToDQ = Math.min(bufferedBytes, length), n = 0;
+
+        while (n < nBytesToDQ && (active = this.nextBufferToRead()).hasRemaining()) {
+            int ncopy = Math.min(nBytesToDQ - n, active.remaining());
+            active.get(dst, offset + n, ncopy);
+            n += ncopy;
+            bufferedBytes -= ncopy;
+
+            if (!active.hasRemaining()) {
+                this.active = this.freeBuffer(this.active);
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * Discard up to length bytes from head of this queue without copying them.
+     * @param length
+     * @return Number of discarded bytes.
+     */
+    public int skip(int length) {
+        this.releaseRetired();
+
+        int nBytesToSkip = Math.min(bufferedBytes, length), n = nBytesToSkip;
+
+        while (n > 0 && (active = this.nextBufferToRead()).hasRemaining()) {
+            int nskip = Math.min(n, active.remaining());
+            active.position(active.position() + nskip);
+            n -= nskip;
+            bufferedBytes -= nskip;
+
+            if (!active.hasRemaining()) {
+                this.active = this.freeBuffer(this.active);
+            }
+        }
+
+        return nBytesToSkip;
+    }
+
+    /**
+     * Read bytes from channel directly into free space of last buffer and fresh pooled buffers,
+     * by a single scattering read. Unused pooled buffers are released immediately.
+     * @param channel
+     * @return Number of read bytes, -1 if channel has reached end-of-stream.
+     * @throws IOException
+     */
+    public long readFrom(ScatteringByteChannel channel) throws IOException {
+        return this.readFrom(channel, DEFAULT_READ_SZ);
+    }
+
+    /**
+     * Read up to about size bytes from channel directly into free space of last buffer and fresh pooled
+     * buffers, by a single scattering read. Buffers are only borrowed from pool for the duration of
+     * the read, unused ones are released immediately.
+     * @param channel
+     * @param size Number of bytes the read is offered at least, unless it exceeds 16 segments.
+     * @return Number of read bytes, -1 if channel has reached end-of-stream.
+     * @throws IOException
+     */
+    public long readFrom(ScatteringByteChannel channel, int size) throws IOException {
+        ByteBuffer[] dsts = IO_SEGMENTS.get();
+        ByteBuffer last = this.peekLast();
+        int first = 0, n = 0, capacity = 0;
+
+        if (last != null && last.hasRemaining()) {
+            dsts[n++] = last;
+            first = 1;
+            capacity = last.remaining();
+        }
+        while (capacity < size && n < dsts.length) {
+            ByteBuffer buf = this.track(this.bufPool.acquire(size - capacity));
+            dsts[n++] = buf;
+            capacity += buf.remaining();
+        }
+
+        long nr = 0;
+        try {
+            nr = channel.read(dsts, 0, n);
+        } finally {
+            //Scattering read fills buffers in order, keep those have got bytes.
+            for (int i = first; i < n; i++) {
+                if (dsts[i].position() > 0) {
+                    this.addLast(dsts[i]);
+                } else {
+                    this.freeBuffer(dsts[i]);
+                }
+            }
+            Arrays.fill(dsts, 0, n, null);
+        }
+
+        if (nr > 0) {
+            this.bufferedBytes += nr;
+        }
+        return nr;
+    }
+
+    /**
+     * Write queued bytes to channel straight from buffers of this queue, by a single gathering write.
+     * Written bytes are removed from this queue.
+     * @param channel
+     * @return Number of written bytes.
+     * @throws IOException
+     */
+    public long writeTo(GatheringByteChannel channel) throws IOException {
+        if (this.isEmpty()) {
+            return 0;
+        }
+
+        ByteBuffer[] srcs = IO_SEGMENTS.get();
+        int[] limits = IO_LIMITS.get();
+        int n = 0, nQueued = 0, position = active.position();
+
+        //Segments are handed to channel as they are, queued ones are flipped to read mode in place, no duplicates.
+        if (active.hasRemaining()) {
+            srcs[n++] = active;
+        }
+        for (; nQueued < nSegments && n < srcs.length; nQueued++) {
+            ByteBuffer seg = this.segment(nQueued);
+            limits[nQueued] = seg.limit();
+            seg.flip();
+            srcs[n++] = seg;
+        }
+
+        long nw = 0;
+        try {
+            nw = channel.write(srcs, 0, n);
+        } finally {
+            Arrays.fill(srcs, 0, n, null);
+
+            //Restore segments as they were, written bytes are removed by skip below.
+            active.position(position);
+            for (int i = 0; i < nQueued; i++) {
+                ByteBuffer seg = this.segment(i);
+                int end = seg.limit();
+                seg.limit(limits[i]).position(end);
+            }
+        }
+
+        this.skip((int) nw);
+        return nw;
+    }
+
+    /**
+     * Peek a byte without removing it.
+     * @param index Index relative to head of queue.
+     * @return
+     */
+    public byte get(int index) {
+        if (index < 0 || index >= bufferedBytes) {
+            throw new IndexOutOfBoundsException("index " + index + " of " + bufferedBytes + " queued bytes.");
+        }
+
+        if (index < active.remaining()) {
+            return active.get(active.position() + index);
+        }
+
+        int base = active.remaining(); //base is index of first byte of current buffer in this queue.
+        for (int i = 0; i < nSegments; i++) {
+            ByteBuffer buf = this.segment(i);
+            int len = buf.position(); //Queued buffers are in write mode.
+            if (index < base + len) {
+                return buf.get(index - base);
+            }
+            base += len;
+        }
+
+        throw new IllegalStateException("queued bytes are less than " + bufferedBytes);
+    }
+
     /**
      * Search and return index of specific byte in queue, -1 means not found.
      * @param b
      * @return
      */
     public int indexOf(byte b) {
-        int idx = -1;
+        return this.indexOf(b, 0);
+    }
 
-        int nBytesBeforeFound = (idx = indexOf(active.slice(), b)) > -1 ? idx : active.remaining();
-        if (idx > -1)
-            return nBytesBeforeFound;
+    /**
+     * Search specific byte in queue starting from fromIndex, so a caller knows there is no such byte
+     * in first fromIndex bytes can resume its search rather than scan them again.
+     * @param b
+     * @param fromIndex
+     * @return Index relative to head of queue, -1 means not found.
+     */
+    public int indexOf(byte b, int fromIndex) {
+        fromIndex = Math.max(fromIndex, 0);
+        if (fromIndex >= bufferedBytes) {
+            return -1;
+        }
 
-        for (ByteBuffer buf : this.fifoBufList) {
-            ByteBuffer dup = buf.duplicate();
-            dup.flip();
+        int idx, base = 0; //base is index of first byte of current buffer in this queue.
+
+        if (active.hasRemaining()) {
+            int start = active.position();
+            if (fromIndex < active.remaining() && (idx = indexOf(active, start + fromIndex, active.limit(), b)) > -1)
+                return idx - start;
+            base = active.remaining();
+        }
 
-            nBytesBeforeFound += (idx = indexOf(dup, b)) > -1 ? idx : dup.remaining();
+        for (int i = 0; i < nSegments; i++) {
+            ByteBuffer buf = this.segment(i);
+            int len = buf.position(); //Queued buffers are in write mode.
 
-            if (idx > -1)
-                return nBytesBeforeFound;
+            if (fromIndex < base + len && (idx = indexOf(buf, Math.max(fromIndex - base, 0), len, b)) > -1)
+                return base + idx;
+            base += len;
         }
 
         return -1;
     }
 
+    /**
+     * Discard all queued bytes and return their buffers to pool.
+     */
+    public void clear() {
+        this.releaseRetired();
+        this.skip(bufferedBytes);
+
+        while (nSegments > 0) {
+            this.freeBuffer(this.pollFirst());
+        }
+        this.active = this.freeBuffer(this.active);
+    }
+
     /**
      * Any queued bytes
      * @return
@@ -125,15 +519,40 @@ public class ByteBufferQueue {
 
     }
 
+    /**
+     * @return Number of queued bytes.
+     */
+    public int size() {
+        return bufferedBytes;
+    }
 
-    //Search b in a buffer's all remaining bytes, return -1 if not found.
-    private int indexOf(ByteBuffer buf, byte b) {
-        int i, len = buf.remaining();
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
 
-        for (i = 0; i < len && buf.get(i) != b; i++)
-            ;
+    /*
+      Search b between absolute index from and to of a buffer, return -1 if not found.
+      Eight bytes are tested at a time (SWAR): after xor with the broadcast pattern, a matched byte becomes zero,
+      and below expression sets the high bit of exactly those zero bytes, without false positives.
+     */
+    private static int indexOf(ByteBuffer buf, int from, int to, byte b) {
+        long pattern = (b & 0xFFL) * ONES;
+        boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
 
-        return i == len ? -1 : i;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long x = buf.getLong(i) ^ pattern;
+            long found = ~(((x & LOW7) + LOW7) | x | LOW7);
+
+            if (found != 0) {
+                return i + ((bigEndian ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found)) >>> 3);
+            }
+        }
+
+        for (; i < to; i++) {
+            if (buf.get(i) == b) return i;
+        }
+
+        return -1;
     }
 
     /*
@@ -150,7 +569,7 @@ public class ByteBufferQueue {
             return active;
         }
 
-        ByteBuffer temp = this.fifoBufList.removeFirst();
+        ByteBuffer temp = this.pollFirst();
         temp.flip();
 
         return temp;
@@ -164,7 +583,7 @@ public class ByteBufferQueue {
             int ntopUp = topUpTolastBuffer(buf);
 
             if (ntopUp == 0) {
-                this.fifoBufList.add(this.allocBuffer());
+                this.addLast(this.allocBuffer());
                 continue;
             }
             n += ntopUp;
@@ -172,35 +591,113 @@ public class ByteBufferQueue {
         return n;
     }
 
+    //Bulk copy as many bytes as dest can hold.
     private int bufferCopy(ByteBuffer src, ByteBuffer dest) {
-        int c = 0;
-        while (src.hasRemaining() && dest.hasRemaining()) {
-            dest.put(src.get());
-            c++;
+        int n = Math.min(src.remaining(), dest.remaining());
+        if (n == 0) return 0;
+
+        if (n == src.remaining()) {
+            dest.put(src);
+            return n;
         }
 
-        return c;
+        int limit = src.limit();
+        src.limit(src.position() + n);
+        dest.put(src);
+        src.limit(limit);
+
+        return n;
     }
 
     private int topUpTolastBuffer(ByteBuffer buf) {
-        ByteBuffer last = this.last();
-        if (last == EMPTY_BUFFER) return 0;
+        ByteBuffer last = this.peekLast();
+        if (last == null) return 0;
 
-        int ncopy = bufferCopy(buf, last);
-        this.fifoBufList.addLast(last);
-        return ncopy;
+        return bufferCopy(buf, last);
     }
 
     private ByteBuffer allocBuffer() {
-        return this.bufPool.acquire();
+        return this.track(this.bufPool.acquire());
+    }
+
+    private ByteBuffer track(ByteBuffer buf) {
+        if (this.bufPool == HEAP_POOL) {
+            return buf; //Nothing to leak.
+        }
+
+        ByteBufferLeakDetector.Tracker tracker = LEAK_DETECTOR.track(buf);
+        if (tracker != null) {
+            if (this.trackers == null) {
+                this.trackers = new IdentityHashMap<>();
+            }
+            this.trackers.put(buf, tracker);
+        }
+        return buf;
+    }
+
+    private void handOverTracker(ByteBuffer buf, ByteBufferQueue dest) {
+        ByteBufferLeakDetector.Tracker tracker = this.trackers == null ? null : this.trackers.remove(buf);
+        if (tracker != null) {
+            if (dest.trackers == null) {
+                dest.trackers = new IdentityHashMap<>();
+            }
+            dest.trackers.put(buf, tracker);
+        }
+    }
+
+    private void releaseRetired() {
+        if (this.retired != null) {
+            this.freeBuffer(this.retired);
+            this.retired = null;
+        }
     }
 
     private ByteBuffer freeBuffer(ByteBuffer buf) {
-        this.bufPool.release(buf);
+        if (buf != EMPTY_BUFFER) {
+            ByteBufferLeakDetector.Tracker tracker = this.trackers == null ? null : this.trackers.remove(buf);
+            if (tracker != null) {
+                tracker.close();
+            }
+            this.bufPool.release(buf);
+        }
         return EMPTY_BUFFER;
     }
 
-    private ByteBuffer last() {
-        return fifoBufList.isEmpty() ? EMPTY_BUFFER : fifoBufList.removeLast();
+    //i-th segment from head of ring.
+    private ByteBuffer segment(int i) {
+        return segments[(head + i) & (segments.length - 1)];
+    }
+
+    private ByteBuffer peekLast() {
+        return nSegments == 0 ? null : this.segment(nSegments - 1);
+    }
+
+    private void addLast(ByteBuffer buf) {
+        if (segments == null) {
+            segments = new ByteBuffer[INITIAL_SEGMENTS];
+        } else if (nSegments == segments.length) {
+            //Unwrap the ring into an array of twice its size, capacity stays a power of two.
+            ByteBuffer[] grown = new ByteBuffer[segments.length << 1];
+            int nHead = Math.min(nSegments, segments.length - head);
+            System.arraycopy(segments, head, grown, 0, nHead);
+            System.arraycopy(segments, 0, grown, nHead, nSegments - nHead);
+            segments = grown;
+            head = 0;
+        }
+        segments[(head + nSegments++) & (segments.length - 1)] = buf;
+    }
+
+    private ByteBuffer pollFirst() {
+        ByteBuffer first = segments[head];
+        segments[head] = null;
+        head = (head + 1) & (segments.length - 1);
+
+        if (--nSegments == 0) {
+            head = 0;
+            if (segments.length > MAX_RETAINED_SEGMENTS) {
+                segments = null;
+            }
+        }
+        return first;
     }
 }
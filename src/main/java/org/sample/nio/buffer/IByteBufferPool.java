@@ -7,5 +7,41 @@ public interface IByteBufferPool {
 
     public ByteBuffer acquire();
 
+    /**
+     * Acquire a buffer can hold at least minSize bytes, pools of a single buffer size may ignore minSize,
+     * so callers should check its capacity.
+     * @param minSize
+     * @return
+     */
+    public default ByteBuffer acquire(int minSize) {
+        return acquire();
+    }
+
     public void release(ByteBuffer buf);
+
+    /**
+     * A pool caching buffers in front of this one (e.g. per thread) keeps a buffer released to it,
+     * rather than releasing it to this pool.
+     * @param buf
+     * @return false if the buffer is not held by anyone, e.g. released twice, the caching pool must drop it then.
+     */
+    public default boolean cache(ByteBuffer buf) {
+        return true;
+    }
+
+    /**
+     * A pool caching buffers in front of this one hands a cached buffer out again.
+     * @param buf
+     */
+    public default void uncache(ByteBuffer buf) {
+    }
+
+    /**
+     * Acquire a reference-counted buffer, it returns to this pool once all its references are released.
+     * @param minSize
+     * @return
+     */
+    public default PooledByteBuffer acquirePooled(int minSize) {
+        return new PooledByteBuffer(acquire(minSize), this);
+    }
 }
@@ -36,7 +36,8 @@ class LeakyByteBufferPool implements IByteBufferPool {
     }
 
     public void release(ByteBuffer buf) {
-        if (buf == null) return;
+        //Drop foreign buffers, e.g. segments handed over to a queue, they do not fit this pool.
+        if (buf == null || buf.capacity() != bufferSz || buf.isReadOnly()) return;
         this.pool.offer(buf);
     }
 
@@ -0,0 +1,81 @@
+package org.sample.nio.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A pooled buffer with a reference count, it goes back to its pool when the last reference is released.
+ * Every holder retains the buffer before using it and releases it when done, using it after or
+ * releasing it more often than it has been retained throws IllegalStateException.
+ */
+public class PooledByteBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledByteBuffer> REF_CNT =
+            AtomicIntegerFieldUpdater.newUpdater(PooledByteBuffer.class, "refCnt");
+
+    private final ByteBuffer buf;
+    private final IByteBufferPool pool;
+    private final ByteBufferLeakDetector.Tracker tracker;
+
+    private volatile int refCnt = 1;
+
+    public PooledByteBuffer(ByteBuffer buf, IByteBufferPool pool) {
+        this(buf, pool, ByteBufferLeakDetector.getDefault());
+    }
+
+    public PooledByteBuffer(ByteBuffer buf, IByteBufferPool pool, ByteBufferLeakDetector detector) {
+        this.buf = buf;
+        this.pool = pool;
+        this.tracker = detector.track(this);
+    }
+
+    /**
+     * @return The underlying buffer, only valid while a reference is held.
+     */
+    public ByteBuffer buffer() {
+        if (refCnt <= 0) {
+            throw new IllegalStateException("buffer has been released.");
+        }
+        return buf;
+    }
+
+    public int refCnt() {
+        return refCnt;
+    }
+
+    public PooledByteBuffer retain() {
+        for (; ; ) {
+            int cnt = refCnt;
+            if (cnt <= 0) {
+                throw new IllegalStateException("buffer has been released.");
+            }
+            if (REF_CNT.compareAndSet(this, cnt, cnt + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Drop a reference, buffer is returned to its pool when it was the last one.
+     * @return true if buffer has been returned to its pool.
+     */
+    public boolean release() {
+        for (; ; ) {
+            int cnt = refCnt;
+            if (cnt <= 0) {
+                throw new IllegalStateException("buffer has been released.");
+            }
+            if (REF_CNT.compareAndSet(this, cnt, cnt - 1)) {
+                if (cnt > 1) {
+                    return false;
+                }
+
+                if (tracker != null) {
+                    tracker.close();
+                }
+                pool.release(buf);
+                return true;
+            }
+        }
+    }
+}
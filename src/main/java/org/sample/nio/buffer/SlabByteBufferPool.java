@@ -0,0 +1,248 @@
+package org.sample.nio.buffer;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This buffer pool carves direct memory into power-of-two size classes.
+ * Direct memory is allocated in large slabs, a slab is cut into equal buffers of one size class
+ * which are recycled through the free list of that class and never returned to the system.
+ * Total slab memory is capped by max_memory, when it is reached or a request exceeds
+ * the largest size class, an unpooled heap buffer is returned instead.
+ * Only buffers handed out and not released yet are taken back, a buffer released twice is rejected
+ * rather than handed out to two holders. Ownership is kept per buffer in a slot that refers to it weakly,
+ * so a buffer dropped by its holder is still collected and reported by leak detection.
+ */
+public class SlabByteBufferPool implements IByteBufferPool {
+
+    private static final int MIN_SHIFT = 6; //64 bytes, the smallest size class.
+    private static final int SLAB_SZ = 1 << 20;
+
+    //States of a carved buffer, it is cached when a pool in front of this one keeps it on release.
+    private static final int FREE = 0;
+    private static final int HELD = 1;
+    private static final int CACHED = 2;
+
+    private static final class Slot extends WeakReference<ByteBuffer> {
+
+        private static final AtomicIntegerFieldUpdater<Slot> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Slot.class, "state");
+
+        private final int hash;
+        private volatile int state = FREE;
+
+        private Slot(ByteBuffer buf, int hash) {
+            super(buf);
+            this.hash = hash;
+        }
+
+        private boolean transit(int from, int to) {
+            return STATE.compareAndSet(this, from, to);
+        }
+    }
+
+    private final int bufferSz;
+    private final int maxShift;
+    private final long max_memory;
+
+    private final AtomicLong reserved = new AtomicLong();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder rejects = new LongAdder();
+
+    /*
+      Slots of carved buffers by identity hash, as equality of buffers compares their bytes. Open addressing
+      at most half full, looked up without locks. Slots are only added by carving slabs, which replaces the table
+      once it would be more than half full and drops slots of collected buffers then.
+     */
+    private volatile AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(1024);
+    private int nSlots = 0; //Guarded by this.
+
+    //Free list per size class, index 0 holds buffers of 1 << MIN_SHIFT bytes.
+    private final ConcurrentLinkedQueue<ByteBuffer>[] freeLists;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SlabByteBufferPool(int bufferSz, int maxBufferSz, long max_memory) {
+        if (bufferSz < 1 || maxBufferSz < bufferSz) {
+            throw new IllegalArgumentException("buffer size should be positive and not greater than max buffer size.");
+        }
+
+        this.bufferSz = bufferSz;
+        this.maxShift = Math.max(shiftOf(maxBufferSz), MIN_SHIFT);
+        this.max_memory = max_memory;
+
+        this.freeLists = new ConcurrentLinkedQueue[maxShift - MIN_SHIFT + 1];
+        for (int i = 0; i < freeLists.length; i++) {
+            freeLists[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    @Override
+    public ByteBuffer acquire() {
+        return this.acquire(bufferSz);
+    }
+
+    @Override
+    public ByteBuffer acquire(int minSize) {
+        int shift = Math.max(shiftOf(minSize), MIN_SHIFT);
+        if (shift > maxShift) {
+            fallbacks.increment();
+            return ByteBuffer.allocate(minSize);
+        }
+
+        ByteBuffer buf = freeLists[shift - MIN_SHIFT].poll();
+        if (buf == null) {
+            buf = this.carveSlab(shift);
+        }
+
+        if (buf.isDirect()) {
+            this.slotOf(buf).state = HELD; //Nobody else has it.
+        }
+        buf.clear();
+        return buf;
+    }
+
+    @Override
+    public void release(ByteBuffer buf) {
+        //Only buffers carved from slabs go back, others are left to GC.
+        if (buf == null || !buf.isDirect() || buf.isReadOnly()) return;
+
+        int cap = buf.capacity(), shift = shiftOf(cap);
+        if (cap != 1 << shift || shift < MIN_SHIFT || shift > maxShift) return;
+
+        Slot slot = this.slotOf(buf);
+        if (slot == null || !(slot.transit(HELD, FREE) || slot.transit(CACHED, FREE))) {
+            rejects.increment(); //Released twice, or not carved by this pool.
+            return;
+        }
+        freeLists[shift - MIN_SHIFT].offer(buf);
+    }
+
+    @Override
+    public boolean cache(ByteBuffer buf) {
+        Slot slot = buf.isDirect() ? this.slotOf(buf) : null;
+        if (slot == null || slot.transit(HELD, CACHED)) {
+            return true; //Buffers not carved by this pool can not be told.
+        }
+        rejects.increment();
+        return false;
+    }
+
+    @Override
+    public void uncache(ByteBuffer buf) {
+        Slot slot = buf.isDirect() ? this.slotOf(buf) : null;
+        if (slot != null) {
+            slot.transit(CACHED, HELD);
+        }
+    }
+
+    /**
+     * @return Bytes of direct memory reserved by slabs.
+     */
+    public long getReservedMemory() {
+        return reserved.get();
+    }
+
+    /**
+     * @return Number of heap buffers handed out because of memory cap or oversize requests.
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return Number of direct buffers released to this pool while not handed out by it, e.g. released twice.
+     */
+    public long getRejects() {
+        return rejects.sum();
+    }
+
+    private Slot slotOf(ByteBuffer buf) {
+        AtomicReferenceArray<Slot> table = this.slots;
+        int mask = table.length() - 1, hash = System.identityHashCode(buf);
+
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Slot slot = table.get(i);
+            if (slot == null) {
+                return null;
+            }
+            if (slot.hash == hash && slot.get() == buf) {
+                return slot;
+            }
+        }
+    }
+
+    //Add slots of buffers of a new slab before any of them is handed out.
+    private synchronized void addSlots(ByteBuffer[] bufs) {
+        AtomicReferenceArray<Slot> table = this.slots;
+
+        if ((nSlots + bufs.length) * 2 > table.length()) {
+            int nLive = 0;
+            for (int i = 0; i < table.length(); i++) {
+                Slot slot = table.get(i);
+                if (slot != null && slot.get() != null) {
+                    nLive++;
+                }
+            }
+
+            AtomicReferenceArray<Slot> grown = new AtomicReferenceArray<>(
+                    Math.max(Integer.highestOneBit((nLive + bufs.length) * 4 - 1), 1024));
+            for (int i = 0; i < table.length(); i++) {
+                Slot slot = table.get(i);
+                if (slot != null && slot.get() != null) {
+                    insert(grown, slot);
+                }
+            }
+            table = grown;
+            nSlots = nLive;
+        }
+
+        for (ByteBuffer buf : bufs) {
+            insert(table, new Slot(buf, System.identityHashCode(buf)));
+        }
+        nSlots += bufs.length;
+        this.slots = table;
+    }
+
+    private static void insert(AtomicReferenceArray<Slot> table, Slot slot) {
+        int mask = table.length() - 1, i = slot.hash & mask;
+        while (table.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, slot);
+    }
+
+    //Allocate a new slab for a size class, return one of its buffers and queue the others.
+    private ByteBuffer carveSlab(int shift) {
+        int size = 1 << shift, slabSz = Math.max(SLAB_SZ, size);
+
+        if (reserved.addAndGet(slabSz) > max_memory) {
+            reserved.addAndGet(-slabSz);
+            fallbacks.increment();
+            return ByteBuffer.allocate(size);
+        }
+
+        ByteBuffer slab = ByteBuffer.allocateDirect(slabSz);
+        ByteBuffer[] bufs = new ByteBuffer[slabSz / size];
+        for (int i = 0; i < bufs.length; i++) {
+            slab.limit((i + 1) * size).position(i * size);
+            bufs[i] = slab.slice();
+        }
+        this.addSlots(bufs);
+
+        ConcurrentLinkedQueue<ByteBuffer> freeList = freeLists[shift - MIN_SHIFT];
+        for (int i = 1; i < bufs.length; i++) {
+            freeList.offer(bufs[i]);
+        }
+        return bufs[0];
+    }
+
+    //Exponent of the smallest power of two not less than n.
+    private static int shiftOf(int n) {
+        return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+}
@@ -0,0 +1,164 @@
+package org.sample.nio.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This buffer pool keeps a magazine (a small stack of buffers) per thread in front of a shared pool.
+ * Threads acquire and release buffers on their own magazine without any synchronization and only
+ * exchange whole magazines with a lock-free depot when theirs is empty or full.
+ * Buffers of other sizes than bufferSz bypass magazines, backing pool serves depot misses and takes
+ * magazines the depot can not hold. Backing pool is told when a buffer is cached and handed out again,
+ * so a buffer released twice is rejected by it instead of being cached twice.
+ */
+public class ThreadLocalByteBufferPool implements IByteBufferPool {
+
+    private static final class Magazine {
+        private final ByteBuffer[] bufs;
+        private int count = 0;
+
+        private Magazine(ByteBuffer[] bufs, int count) {
+            this.bufs = bufs;
+            this.count = count;
+        }
+    }
+
+    private final IByteBufferPool backing;
+    private final int bufferSz;
+    private final int magazineSz;
+    private final int max_magazines;
+
+    private final ThreadLocal<Magazine> magazines;
+
+    //Full magazines shared by all threads.
+    private final ConcurrentLinkedQueue<ByteBuffer[]> depot = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depotSz = new AtomicInteger();
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder localMisses = new LongAdder();
+    private final LongAdder depotHits = new LongAdder();
+    private final LongAdder depotMisses = new LongAdder();
+    private final LongAdder depotOverflows = new LongAdder();
+    private final LongAdder rejects = new LongAdder();
+
+    public ThreadLocalByteBufferPool(IByteBufferPool backing, int bufferSz, int magazineSz, int max_magazines) {
+        if (magazineSz < 1) {
+            throw new IllegalArgumentException("magazine should hold at least one buffer.");
+        }
+
+        this.backing = backing;
+        this.bufferSz = bufferSz;
+        this.magazineSz = magazineSz;
+        this.max_magazines = max_magazines;
+        this.magazines = ThreadLocal.withInitial(() -> new Magazine(new ByteBuffer[magazineSz], 0));
+    }
+
+    @Override
+    public ByteBuffer acquire() {
+        return this.acquire(bufferSz);
+    }
+
+    @Override
+    public ByteBuffer acquire(int minSize) {
+        if (minSize > bufferSz) {
+            return backing.acquire(minSize);
+        }
+
+        Magazine mag = magazines.get();
+        if (mag.count > 0) {
+            localHits.increment();
+            return take(mag);
+        }
+        localMisses.increment();
+
+        //Swap the empty magazine for a full one from depot.
+        ByteBuffer[] full = depot.poll();
+        if (full != null) {
+            depotSz.decrementAndGet();
+            depotHits.increment();
+
+            mag = new Magazine(full, full.length);
+            magazines.set(mag);
+            return take(mag);
+        }
+        depotMisses.increment();
+
+        return backing.acquire(bufferSz);
+    }
+
+    @Override
+    public void release(ByteBuffer buf) {
+        if (buf == null) return;
+        if (buf.capacity() != bufferSz || buf.isReadOnly()) {
+            backing.release(buf);
+            return;
+        }
+
+        if (!backing.cache(buf)) {
+            rejects.increment(); //Released twice, one of its holders is not the owner any more.
+            return;
+        }
+
+        Magazine mag = magazines.get();
+        if (mag.count == magazineSz) {
+            //Hand the full magazine over to depot, or back to backing pool if depot is full too.
+            if (depotSz.incrementAndGet() <= max_magazines) {
+                depot.offer(mag.bufs);
+            } else {
+                depotSz.decrementAndGet();
+                depotOverflows.increment();
+                for (ByteBuffer b : mag.bufs) {
+                    backing.release(b);
+                }
+            }
+
+            mag = new Magazine(new ByteBuffer[magazineSz], 0);
+            magazines.set(mag);
+        }
+
+        mag.bufs[mag.count++] = buf;
+    }
+
+    public long getLocalHits() {
+        return localHits.sum();
+    }
+
+    public long getLocalMisses() {
+        return localMisses.sum();
+    }
+
+    public long getDepotHits() {
+        return depotHits.sum();
+    }
+
+    /**
+     * @return Number of acquisitions served by backing pool.
+     */
+    public long getDepotMisses() {
+        return depotMisses.sum();
+    }
+
+    /**
+     * @return Number of full magazines released to backing pool because depot was full.
+     */
+    public long getDepotOverflows() {
+        return depotOverflows.sum();
+    }
+
+    /**
+     * @return Number of buffers dropped on release because they were not held, e.g. released twice.
+     */
+    public long getRejects() {
+        return rejects.sum();
+    }
+
+    private ByteBuffer take(Magazine mag) {
+        ByteBuffer buf = mag.bufs[--mag.count];
+        mag.bufs[mag.count] = null;
+        backing.uncache(buf);
+        buf.clear();
+        return buf;
+    }
+}
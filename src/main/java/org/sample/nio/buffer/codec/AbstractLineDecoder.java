@@ -0,0 +1,36 @@
+package org.sample.nio.buffer.codec;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+
+/**
+ * Find lines terminated by '\n'. A decoder remembers how far it has searched a partial line,
+ * so it serves a single queue.
+ */
+public abstract class AbstractLineDecoder<T> implements ByteBufferQueueDecoder<T> {
+
+    protected static final byte DELIMITER = '\n';
+
+    //Number of bytes from head of queue known to have no delimiter, resumes search of a partial line.
+    private int scanned = 0;
+
+    @Override
+    public T decode(ByteBufferQueue queue) {
+        int position = -1;
+
+        if ((position = queue.indexOf(DELIMITER, scanned)) > -1) {
+            scanned = 0;
+            return this.decodeLine(queue, position);
+        }
+
+        scanned = queue.size();
+        return null;
+    }
+
+    /**
+     * Remove a line and its delimiter from head of queue.
+     * @param queue
+     * @param length Number of bytes of the line without delimiter.
+     * @return Decoded line.
+     */
+    protected abstract T decodeLine(ByteBufferQueue queue, int length);
+}
@@ -1,8 +1,22 @@
 package org.sample.nio.buffer.codec;
 
+import org.sample.nio.buffer.ByteBufferQueue;
+
 import java.nio.ByteBuffer;
 
 public interface ByteBufferQueueEncoder<T> {
 
     public ByteBuffer encode(T t);
+
+    /**
+     * Encode straight into tail segment of queue, so messages of a batch share segments
+     * rather than each of them gets its own buffer.
+     * @param t
+     * @param queue
+     * @return Number of encoded bytes.
+     */
+    public default int encode(T t, ByteBufferQueue queue) {
+        ByteBuffer buf = this.encode(t);
+        return buf == null ? 0 : queue.equeue(buf);
+    }
 }
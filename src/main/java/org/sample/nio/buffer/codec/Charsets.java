@@ -0,0 +1,14 @@
+package org.sample.nio.buffer.codec;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+class Charsets {
+
+    //Charsets map ASCII characters to the same single bytes, those are coded without charset coders.
+    static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+}
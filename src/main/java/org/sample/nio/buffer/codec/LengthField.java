@@ -0,0 +1,135 @@
+package org.sample.nio.buffer.codec;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned length field precedes payload of a frame, fixed ones are big-endian,
+ * VARINT takes 7 bits per byte least significant group first (LEB128) up to 5 bytes.
+ */
+public enum LengthField {
+    INT8(1, 0xFF),
+    INT16(2, 0xFFFF),
+    INT32(4, Integer.MAX_VALUE),
+    VARINT(5, Integer.MAX_VALUE);
+
+    private final int maxSize;
+    private final int maxLength;
+
+    LengthField(int maxSize, int maxLength) {
+        this.maxSize = maxSize;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return Max number of bytes of field.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Max length the field can hold.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @param length
+     * @return Number of bytes of field holds length.
+     */
+    public int sizeOf(int length) {
+        if (this != VARINT) {
+            return maxSize;
+        }
+        return (31 - Integer.numberOfLeadingZeros(length | 1)) / 7 + 1;
+    }
+
+    /**
+     * Peek field at head of queue.
+     * @param queue
+     * @return Length held by the field packed with number of its bytes in the upper word,
+     * -1 if the field is not entirely queued yet.
+     */
+    long peek(ByteBufferQueue queue) {
+        int nQueued = queue.size();
+
+        switch (this) {
+            case INT8:
+                return nQueued < 1 ? -1 : pack(queue.get(0) & 0xFF, 1);
+            case INT16:
+                return nQueued < 2 ? -1 : pack((queue.get(0) & 0xFF) << 8 | (queue.get(1) & 0xFF), 2);
+            case INT32:
+                if (nQueued < 4) return -1;
+                return pack((queue.get(0) & 0xFFL) << 24 | (queue.get(1) & 0xFF) << 16
+                        | (queue.get(2) & 0xFF) << 8 | (queue.get(3) & 0xFF), 4);
+            case VARINT:
+            default:
+                long length = 0;
+                for (int i = 0; i < maxSize; i++) {
+                    if (i == nQueued) return -1;
+
+                    byte b = queue.get(i);
+                    length |= (long) (b & 0x7F) << (7 * i);
+                    if (b >= 0) {
+                        return pack(length, i + 1);
+                    }
+                }
+                throw new IllegalStateException("varint length field exceeds " + maxSize + " bytes.");
+        }
+    }
+
+    /**
+     * Write field holds length to tail of queue, byte by byte so nothing is allocated per frame.
+     * @param length
+     * @param dst
+     * @return Number of written bytes.
+     */
+    int write(int length, ByteBufferQueue dst) {
+        int size = sizeOf(length);
+        for (int i = 0; i < size; i++) {
+            dst.equeue(byteAt(length, i, size));
+        }
+        return size;
+    }
+
+    /**
+     * Write field holds length into dst at its position.
+     * @param length
+     * @param dst
+     * @return Number of written bytes.
+     */
+    int write(int length, ByteBuffer dst) {
+        int size = sizeOf(length);
+        for (int i = 0; i < size; i++) {
+            dst.put(byteAt(length, i, size));
+        }
+        return size;
+    }
+
+    //i-th byte of a field of size bytes holds length.
+    private byte byteAt(int length, int i, int size) {
+        if (this != VARINT) {
+            return (byte) (length >>> (8 * (size - 1 - i)));
+        }
+        int group = (length >>> (7 * i)) & 0x7F;
+        return (byte) (i < size - 1 ? group | 0x80 : group);
+    }
+
+    static int lengthOf(long field) {
+        return (int) field;
+    }
+
+    static int sizeOf(long field) {
+        return (int) (field >>> 32);
+    }
+
+    private static long pack(long length, int size) {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("frame length " + length + " exceeds " + Integer.MAX_VALUE);
+        }
+        return (long) size << 32 | length;
+    }
+}
@@ -0,0 +1,46 @@
+package org.sample.nio.buffer.codec;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decode frames of a length field followed by payload, no byte of payload is scanned.
+ * Payload held by a single segment is returned as a read-only view of the queue without copying,
+ * it is only valid until the next decode or other read of the queue.
+ * A frame exceeds max frame size is rejected by IllegalStateException before its payload arrives.
+ */
+public class LengthFieldFrameDecoder implements ByteBufferQueueDecoder<ByteBuffer> {
+
+    private static final ByteBuffer EMPTY_PAYLOAD = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final LengthField lengthField;
+    private final int maxFrameSize;
+
+    public LengthFieldFrameDecoder(LengthField lengthField, int maxFrameSize) {
+        if (maxFrameSize < 0 || maxFrameSize > lengthField.getMaxLength()) {
+            throw new IllegalArgumentException("max frame size should be between 0 and " + lengthField.getMaxLength());
+        }
+        this.lengthField = lengthField;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBufferQueue queue) {
+        long field = lengthField.peek(queue);
+        if (field < 0) {
+            return null;
+        }
+
+        int length = LengthField.lengthOf(field), size = LengthField.sizeOf(field);
+        if (length > maxFrameSize) {
+            throw new IllegalStateException("frame length " + length + " exceeds max frame size " + maxFrameSize);
+        }
+        if (queue.size() - size < length) {
+            return null; //Partial frame
+        }
+
+        queue.skip(size);
+        return length == 0 ? EMPTY_PAYLOAD : queue.dequeueSlice(length);
+    }
+}
@@ -0,0 +1,57 @@
+package org.sample.nio.buffer.codec;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encode remaining bytes of a buffer as payload of a frame preceded by its length field,
+ * position of the buffer is left untouched.
+ * It keeps no state, so a single encoder may be shared by connections served on different threads.
+ */
+public class LengthFieldFrameEncoder implements ByteBufferQueueEncoder<ByteBuffer> {
+
+    private final LengthField lengthField;
+    private final int maxFrameSize;
+
+    public LengthFieldFrameEncoder(LengthField lengthField, int maxFrameSize) {
+        if (maxFrameSize < 0 || maxFrameSize > lengthField.getMaxLength()) {
+            throw new IllegalArgumentException("max frame size should be between 0 and " + lengthField.getMaxLength());
+        }
+        this.lengthField = lengthField;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public ByteBuffer encode(ByteBuffer payload) {
+        if (payload == null) return null;
+
+        int length = this.checkLength(payload);
+        ByteBuffer frame = ByteBuffer.allocate(lengthField.sizeOf(length) + length);
+
+        lengthField.write(length, frame);
+        frame.put(payload.duplicate());
+        frame.flip();
+        return frame;
+    }
+
+    @Override
+    public int encode(ByteBuffer payload, ByteBufferQueue queue) {
+        if (payload == null) return 0;
+
+        int length = this.checkLength(payload), position = payload.position();
+
+        int n = lengthField.write(length, queue);
+        n += queue.equeue(payload);
+        payload.position(position);
+        return n;
+    }
+
+    private int checkLength(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length > maxFrameSize) {
+            throw new IllegalArgumentException("frame length " + length + " exceeds max frame size " + maxFrameSize);
+        }
+        return length;
+    }
+}
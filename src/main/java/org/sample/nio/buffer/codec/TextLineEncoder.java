@@ -1,15 +1,99 @@
 package org.sample.nio.buffer.codec;
 
+import org.sample.nio.buffer.ByteBufferQueue;
+
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encode char sequences to lines terminated by '\n', a delimiter is appended unless a sequence ends with it.
+ * Encoding into a queue goes through a scratch buffer reused by every encode, ASCII characters are narrowed
+ * directly when charset is ASCII compatible, others go through a charset encoder.
+ */
+public class TextLineEncoder implements ByteBufferQueueEncoder<CharSequence> {
+
+    private static final int SCRATCH_SZ = 256;
+
+    private final Charset charset;
+    private final CharsetEncoder charsetEncoder;
+    private final boolean asciiCompatible;
+
+    private final byte[] scratch = new byte[SCRATCH_SZ];
+    private final ByteBuffer scratchView = ByteBuffer.wrap(scratch);
+
+    public TextLineEncoder() {
+        this(Charset.defaultCharset());
+    }
+
+    public TextLineEncoder(Charset charset) {
+        this.charset = charset;
+        this.charsetEncoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = Charsets.isAsciiCompatible(charset);
+    }
 
-public class TextLineEncoder implements ByteBufferQueueEncoder<String> {
     @Override
-    public ByteBuffer encode(String s) {
+    public ByteBuffer encode(CharSequence s) {
         if(s == null) return null;
 
-        if(!s.endsWith("\n"))
-            s += "\n";
+        String line = s.toString();
+        if(!line.endsWith("\n"))
+            line += "\n";
+
+        return ByteBuffer.wrap(line.getBytes(charset));
+    }
+
+    @Override
+    public int encode(CharSequence s, ByteBufferQueue queue) {
+        if(s == null) return 0;
+
+        int length = s.length(), n = 0, i = 0;
+
+        if (asciiCompatible) {
+            while (i < length) {
+                int nb = 0;
+                char c;
+                while (i < length && nb < scratch.length && (c = s.charAt(i)) < 0x80) {
+                    scratch[nb++] = (byte) c;
+                    i++;
+                }
+                n += queue.equeue(scratch, 0, nb);
+
+                if (nb < scratch.length && i < length) {
+                    break; //Not ASCII
+                }
+            }
+        }
+        if (i < length) {
+            n += this.encodeCharset(s, i, length, queue);
+        }
+
+        if (length == 0 || s.charAt(length - 1) != '\n') {
+            scratch[0] = '\n';
+            n += queue.equeue(scratch, 0, 1);
+        }
+        return n;
+    }
+
+    private int encodeCharset(CharSequence s, int start, int end, ByteBufferQueue queue) {
+        CharBuffer in = CharBuffer.wrap(s, start, end);
+        int n = 0;
 
-        return ByteBuffer.wrap(s.getBytes());
+        charsetEncoder.reset();
+        boolean flushed = false;
+        while (!flushed) {
+            scratchView.clear();
+            if (in.hasRemaining()) {
+                charsetEncoder.encode(in, scratchView, true);
+            } else {
+                flushed = charsetEncoder.flush(scratchView).isUnderflow();
+            }
+            n += queue.equeue(scratch, 0, scratchView.position());
+        }
+        return n;
     }
 }
@@ -0,0 +1,94 @@
+package org.sample.nio.buffer.codec;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decode lines terminated by '\n' without delimiter into a char sequence reused by every decode,
+ * it is only valid until the next decode, callers keep a line by toString().
+ * Lines of ASCII bytes are widened directly when charset is ASCII compatible, others go through
+ * a charset decoder, malformed bytes are replaced.
+ */
+public class TextLineViewDecoder extends AbstractLineDecoder<CharSequence> {
+
+    private static final int INITIAL_LINE_SZ = 256;
+
+    private final Charset charset;
+    private final boolean asciiCompatible;
+
+    //Created by the first line needs them, a connection stays idle holds none of them.
+    private CharsetDecoder charsetDecoder = null;
+
+    private byte[] bytes = null;
+    private ByteBuffer byteView = null;
+
+    private char[] chars = null;
+    private CharBuffer line = null;
+
+    public TextLineViewDecoder(Charset charset) {
+        this.charset = charset;
+        this.asciiCompatible = Charsets.isAsciiCompatible(charset);
+    }
+
+    @Override
+    protected CharSequence decodeLine(ByteBufferQueue queue, int length) {
+        if (bytes == null || length > bytes.length) {
+            bytes = new byte[Math.max(INITIAL_LINE_SZ, Integer.highestOneBit(length) << 1)];
+            byteView = ByteBuffer.wrap(bytes);
+        }
+        queue.dequeue(bytes, 0, length);
+        queue.skip(1); //Delimiter
+
+        if (asciiCompatible && this.decodeAscii(length)) {
+            return line;
+        }
+        return this.decodeCharset(length);
+    }
+
+    private boolean decodeAscii(int length) {
+        this.ensureChars(length);
+
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b < 0) return false; //Not ASCII
+
+            chars[i] = (char) b;
+        }
+
+        line.clear();
+        line.limit(length);
+        return true;
+    }
+
+    private CharSequence decodeCharset(int length) {
+        if (charsetDecoder == null) {
+            charsetDecoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        this.ensureChars((int) Math.ceil(length * (double) charsetDecoder.maxCharsPerByte()));
+
+        byteView.clear();
+        byteView.limit(length);
+        line.clear();
+
+        charsetDecoder.reset();
+        charsetDecoder.decode(byteView, line, true);
+        charsetDecoder.flush(line);
+
+        line.flip();
+        return line;
+    }
+
+    private void ensureChars(int length) {
+        if (chars == null || length > chars.length) {
+            chars = new char[Math.max(INITIAL_LINE_SZ, Integer.highestOneBit(length) << 1)];
+            line = CharBuffer.wrap(chars);
+        }
+    }
+}
@@ -2,13 +2,15 @@ package org.sample.nio.echo.server;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.sample.nio.FlushPolicy;
 import org.sample.nio.IHandler;
 import org.sample.nio.buffer.ByteBufferPoolFactory;
 import org.sample.nio.buffer.ByteBufferQueue;
 import org.sample.nio.buffer.IByteBufferPool;
-import org.sample.nio.buffer.codec.TextLineDecoder;
 import org.sample.nio.buffer.codec.TextLineEncoder;
+import org.sample.nio.buffer.codec.TextLineViewDecoder;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Supplier;
 
 
@@ -16,18 +18,52 @@ public class EchoHandler implements IHandler {
 
     private static final Logger logger = LogManager.getLogger();
 
-    private ByteBufferQueue outputQ = new ByteBufferQueue(bufferBool());
-    private ByteBufferQueue inputQ = new ByteBufferQueue(bufferBool());
+    private final ByteBufferQueue outputQ;
+    private final ByteBufferQueue inputQ;
 
-    private TextLineDecoder decoder = new TextLineDecoder();
-    private TextLineEncoder encoder = new TextLineEncoder();
+    //Lines are decoded into a reused view and encoded straight into output queue, no allocation per line.
+    private final TextLineViewDecoder decoder = new TextLineViewDecoder(StandardCharsets.UTF_8);
+
+    //Encoder keeps nothing between lines, so handlers served by the same thread share one.
+    private static final ThreadLocal<TextLineEncoder> encoders =
+            ThreadLocal.withInitial(() -> new TextLineEncoder(StandardCharsets.UTF_8));
+
+    private final FlushPolicy flushPolicy;
+
+    public EchoHandler() {
+        this(FlushPolicy.END_OF_BATCH);
+    }
+
+    public EchoHandler(FlushPolicy flushPolicy) {
+        this(flushPolicy, null);
+    }
+
+    /**
+     * @param flushPolicy
+     * @param bufferPool  Buffer pool of queues, null means the pool shared by all echo handlers.
+     */
+    public EchoHandler(FlushPolicy flushPolicy, Supplier<IByteBufferPool> bufferPool) {
+        if (bufferPool == null) {
+            bufferPool = bufferBool();
+        }
+        this.flushPolicy = flushPolicy;
+        this.outputQ = new ByteBufferQueue(bufferPool);
+        this.inputQ = new ByteBufferQueue(bufferPool);
+    }
 
     @Override
     public void handle() {
-        String inMsg = null;
+        TextLineEncoder encoder = encoders.get();
+        CharSequence inMsg = null;
+        int nMessages = 0;
 
+        //Responses of pipelined lines share output segments, and are written out together per flush.
         while ((inMsg = decoder.decode(inputQ)) != null) {
-            this.getOutputQ().equeue(encoder.encode(inMsg));
+            encoder.encode(inMsg, outputQ);
+
+            if (flushPolicy.shouldFlush(++nMessages, outputQ.size())) {
+                return;
+            }
         }
     }
 
@@ -42,7 +78,14 @@ public class EchoHandler implements IHandler {
     }
 
 
-    private static final IByteBufferPool sharedBufferPool = ByteBufferPoolFactory.newByteBufferPool(1024, 16);
+    private static final int BUF_SZ = 1024;
+
+    private static final int MAX_BUF_SZ = 64 * 1024;
+    private static final long MAX_DIRECT_MEMORY = 256L * 1024 * 1024;
+
+    //Reads are sized per connection, so buffers of all size classes come from the direct slab pool.
+    private static final IByteBufferPool sharedBufferPool = ByteBufferPoolFactory.newThreadLocalByteBufferPool(
+            ByteBufferPoolFactory.newDirectByteBufferPool(BUF_SZ, MAX_BUF_SZ, MAX_DIRECT_MEMORY), BUF_SZ, 32, 64);
 
     private Supplier<IByteBufferPool> bufferBool() {
         return () -> sharedBufferPool;
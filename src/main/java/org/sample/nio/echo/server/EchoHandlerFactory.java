@@ -1,12 +1,24 @@
 package org.sample.nio.echo.server;
 
+import org.sample.nio.FlushPolicy;
 import org.sample.nio.IHandler;
 import org.sample.nio.IOHandlerFactory;
 
 
 public class EchoHandlerFactory extends IOHandlerFactory {
+
+    private final FlushPolicy flushPolicy;
+
+    public EchoHandlerFactory() {
+        this(FlushPolicy.END_OF_BATCH);
+    }
+
+    public EchoHandlerFactory(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
     @Override
     public IHandler createHandler() {
-        return new EchoHandler();
+        return new EchoHandler(flushPolicy, this.getBufferPool());
     }
 }
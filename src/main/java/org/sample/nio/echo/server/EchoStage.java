@@ -0,0 +1,20 @@
+package org.sample.nio.echo.server;
+
+import org.sample.nio.pipeline.IStage;
+import org.sample.nio.pipeline.StageContext;
+
+/**
+ * Write every inbound message back, it is stateless and shared by all connections.
+ */
+public class EchoStage implements IStage {
+
+    public static final EchoStage INSTANCE = new EchoStage();
+
+    private EchoStage() {
+    }
+
+    @Override
+    public void onRead(StageContext ctx, Object msg) {
+        ctx.write(msg);
+    }
+}
@@ -0,0 +1,168 @@
+package org.sample.nio.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative values in log-linear buckets as HDR histograms have,
+ * each power of two is split into 16 buckets, so a recorded value is off by 6.25% at most.
+ * Values from 2^40 on (about 18 minutes in nanoseconds) fall into an overflow bucket and are reported as 2^40.
+ * Recording is a single atomic increment and never allocates. Counts are striped by recording thread,
+ * so threads recording at once rarely touch the same cache lines, and stripes are summed up by snapshots.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXP = 40;
+
+    //The last one is the overflow bucket.
+    static final int NUM_OF_BUCKETS = ((MAX_EXP - SUB_BITS + 1) << SUB_BITS) + 1;
+
+    //Stripes up to the number of processors, at most 8.
+    private static final int DEFAULT_STRIPES =
+            Integer.highestOneBit(Math.min(Math.max(Runtime.getRuntime().availableProcessors(), 1), 8));
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    public Histogram() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param nStripes Number of count arrays, rounded down to a power of two.
+     *                 1 suits a histogram recorded by a single thread, e.g. its selector loop.
+     */
+    public Histogram(int nStripes) {
+        if (nStripes < 1) {
+            throw new IllegalArgumentException("At least one stripe is required.");
+        }
+        this.stripes = new AtomicLongArray[Integer.highestOneBit(nStripes)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new AtomicLongArray(NUM_OF_BUCKETS);
+        }
+        this.mask = stripes.length - 1;
+    }
+
+    public void record(long value) {
+        //Pool threads have consecutive ids, so they spread over stripes evenly.
+        stripes[(int) Thread.currentThread().getId() & mask].incrementAndGet(indexOf(value));
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[NUM_OF_BUCKETS];
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] += counts.get(i);
+            }
+        }
+        return new Snapshot(copy);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        if (exp >= MAX_EXP) {
+            return NUM_OF_BUCKETS - 1;
+        }
+
+        int shift = exp - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    //Largest value falls into a bucket.
+    static long highestOf(int index) {
+        if (index < 2 * SUB_COUNT) {
+            return index;
+        }
+        if (index == NUM_OF_BUCKETS - 1) {
+            return 1L << MAX_EXP;
+        }
+
+        int shift = (index >>> SUB_BITS) - 1;
+        long lowest = (long) ((index & (SUB_COUNT - 1)) | SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Counts of a histogram at a point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.count = n;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @param percentile From 0 to 100.
+         * @return Upper bound of the bucket the percentile falls into, 0 if nothing is recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long n = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if ((n += counts[i]) >= rank) {
+                    return highestOf(i);
+                }
+            }
+            return highestOf(counts.length - 1);
+        }
+
+        public long getMax() {
+            return this.getValueAtPercentile(100);
+        }
+
+        /**
+         * @return Mean of bucket midpoints.
+         */
+        public double getMean() {
+            if (count == 0) {
+                return 0;
+            }
+
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    long high = highestOf(i), low = i == 0 ? 0 : highestOf(i - 1) + 1;
+                    sum += counts[i] * ((low + high) / 2.0);
+                }
+            }
+            return sum / count;
+        }
+
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p999=%d max=%d", count, getMean(),
+                    getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                    getValueAtPercentile(99.9), getMax());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.sample.nio.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a selector loop, recorded by the loop and by workers serve its
+ * connections. Latencies are in nanoseconds.
+ */
+public class LoopMetrics {
+
+    private final LongAdder selects = new LongAdder();
+    private final LongAdder selectedKeys = new LongAdder();
+    private final LongAdder wakeups = new LongAdder();
+    private final LongAdder savedWakeups = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder idleTimeouts = new LongAdder();
+
+    //Recorded by the loop alone.
+    private final Histogram keysPerSelect = new Histogram(1);
+    private final Histogram completionDelay = new Histogram(1);
+
+    //Recorded by workers.
+    private final Histogram queueDelay = new Histogram();
+    private final Histogram handleTime = new Histogram();
+
+    /**
+     * @param nKeys Number of keys a selection returned.
+     */
+    public void onSelect(int nKeys) {
+        selects.increment();
+        selectedKeys.add(nKeys);
+        keysPerSelect.record(nKeys);
+    }
+
+    public void onWakeup() {
+        wakeups.increment();
+    }
+
+    public void onSavedWakeup() {
+        savedWakeups.increment();
+    }
+
+    /**
+     * @param nanos Time a ready channel waited in worker pool queue.
+     */
+    public void onQueued(long nanos) {
+        queueDelay.record(nanos);
+    }
+
+    /**
+     * @param nanos Time a worker or a loop spent processing a ready channel.
+     */
+    public void onHandled(long nanos) {
+        handleTime.record(nanos);
+    }
+
+    /**
+     * @param nanos Time from a worker completes a channel till its loop restores its interest ops.
+     */
+    public void onCompleted(long nanos) {
+        completionDelay.record(nanos);
+    }
+
+    public void onRead(long nBytes) {
+        bytesRead.add(nBytes);
+    }
+
+    public void onWritten(long nBytes) {
+        bytesWritten.add(nBytes);
+    }
+
+    public void onIdleTimeout() {
+        idleTimeouts.increment();
+    }
+
+    public long getWakeups() {
+        return wakeups.sum();
+    }
+
+    public long getSavedWakeups() {
+        return savedWakeups.sum();
+    }
+
+    /**
+     * @param numOfChannels          Number of channels registered to the loop.
+     * @param pendingRegistrations   Number of channels waiting for registration.
+     * @param completionQueueDepth   Number of completed channels waiting for the loop.
+     * @return
+     */
+    public MetricsSnapshot snapshot(int numOfChannels, int pendingRegistrations, int completionQueueDepth) {
+        return new MetricsSnapshot(selects.sum(), selectedKeys.sum(), wakeups.sum(), savedWakeups.sum(),
+                bytesRead.sum(), bytesWritten.sum(), idleTimeouts.sum(),
+                numOfChannels, pendingRegistrations, completionQueueDepth, 0,
+                keysPerSelect.snapshot(), queueDelay.snapshot(), handleTime.snapshot(), completionDelay.snapshot());
+    }
+}
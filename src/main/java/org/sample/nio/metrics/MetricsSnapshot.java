@@ -0,0 +1,153 @@
+package org.sample.nio.metrics;
+
+import java.util.List;
+
+/**
+ * Metrics of a selector loop or a whole reactor at a point in time. Counters are totals since start,
+ * depths are current values, latencies are in nanoseconds.
+ */
+public class MetricsSnapshot {
+
+    private final long selects;
+    private final long selectedKeys;
+    private final long wakeups;
+    private final long savedWakeups;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long idleTimeouts;
+
+    private final int numOfChannels;
+    private final int pendingRegistrations;
+    private final int completionQueueDepth;
+    private final int workerQueueDepth;
+
+    private final Histogram.Snapshot keysPerSelect;
+    private final Histogram.Snapshot queueDelay;
+    private final Histogram.Snapshot handleTime;
+    private final Histogram.Snapshot completionDelay;
+
+    MetricsSnapshot(long selects, long selectedKeys, long wakeups, long savedWakeups, long bytesRead,
+                    long bytesWritten, long idleTimeouts, int numOfChannels, int pendingRegistrations,
+                    int completionQueueDepth, int workerQueueDepth, Histogram.Snapshot keysPerSelect,
+                    Histogram.Snapshot queueDelay, Histogram.Snapshot handleTime, Histogram.Snapshot completionDelay) {
+        this.selects = selects;
+        this.selectedKeys = selectedKeys;
+        this.wakeups = wakeups;
+        this.savedWakeups = savedWakeups;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.idleTimeouts = idleTimeouts;
+        this.numOfChannels = numOfChannels;
+        this.pendingRegistrations = pendingRegistrations;
+        this.completionQueueDepth = completionQueueDepth;
+        this.workerQueueDepth = workerQueueDepth;
+        this.keysPerSelect = keysPerSelect;
+        this.queueDelay = queueDelay;
+        this.handleTime = handleTime;
+        this.completionDelay = completionDelay;
+    }
+
+    /**
+     * Sum up snapshots of all loops of a reactor.
+     * @param loops
+     * @param workerQueueDepth Number of ready channels waiting for a worker.
+     * @return
+     */
+    public static MetricsSnapshot merge(List<MetricsSnapshot> loops, int workerQueueDepth) {
+        MetricsSnapshot m = loops.get(0);
+        for (int i = 1; i < loops.size(); i++) {
+            MetricsSnapshot o = loops.get(i);
+            m = new MetricsSnapshot(m.selects + o.selects, m.selectedKeys + o.selectedKeys, m.wakeups + o.wakeups,
+                    m.savedWakeups + o.savedWakeups, m.bytesRead + o.bytesRead, m.bytesWritten + o.bytesWritten,
+                    m.idleTimeouts + o.idleTimeouts, m.numOfChannels + o.numOfChannels,
+                    m.pendingRegistrations + o.pendingRegistrations, m.completionQueueDepth + o.completionQueueDepth,
+                    0, m.keysPerSelect.merge(o.keysPerSelect), m.queueDelay.merge(o.queueDelay),
+                    m.handleTime.merge(o.handleTime), m.completionDelay.merge(o.completionDelay));
+        }
+        return new MetricsSnapshot(m.selects, m.selectedKeys, m.wakeups, m.savedWakeups, m.bytesRead, m.bytesWritten,
+                m.idleTimeouts, m.numOfChannels, m.pendingRegistrations, m.completionQueueDepth, workerQueueDepth,
+                m.keysPerSelect, m.queueDelay, m.handleTime, m.completionDelay);
+    }
+
+    public long getSelects() {
+        return selects;
+    }
+
+    public long getSelectedKeys() {
+        return selectedKeys;
+    }
+
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    public long getSavedWakeups() {
+        return savedWakeups;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getIdleTimeouts() {
+        return idleTimeouts;
+    }
+
+    public int getNumOfChannels() {
+        return numOfChannels;
+    }
+
+    public int getPendingRegistrations() {
+        return pendingRegistrations;
+    }
+
+    public int getCompletionQueueDepth() {
+        return completionQueueDepth;
+    }
+
+    public int getWorkerQueueDepth() {
+        return workerQueueDepth;
+    }
+
+    /**
+     * @return Number of keys per selection.
+     */
+    public Histogram.Snapshot getKeysPerSelect() {
+        return keysPerSelect;
+    }
+
+    /**
+     * @return Time ready channels waited in worker pool queue.
+     */
+    public Histogram.Snapshot getQueueDelay() {
+        return queueDelay;
+    }
+
+    /**
+     * @return Time spent processing ready channels, reading, handling and writing.
+     */
+    public Histogram.Snapshot getHandleTime() {
+        return handleTime;
+    }
+
+    /**
+     * @return Time from workers complete channels till their loops pick them up.
+     */
+    public Histogram.Snapshot getCompletionDelay() {
+        return completionDelay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("selects=%d keys=%d wakeups=%d savedWakeups=%d read=%d written=%d idleTimeouts=%d"
+                        + " channels=%d pendingRegistrations=%d completionQueue=%d workerQueue=%d%n"
+                        + "  keysPerSelect: %s%n  queueDelay(ns): %s%n  handleTime(ns): %s%n  completionDelay(ns): %s",
+                selects, selectedKeys, wakeups, savedWakeups, bytesRead, bytesWritten, idleTimeouts, numOfChannels,
+                pendingRegistrations, completionQueueDepth, workerQueueDepth, keysPerSelect, queueDelay, handleTime,
+                completionDelay);
+    }
+}
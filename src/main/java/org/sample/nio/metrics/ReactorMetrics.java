@@ -0,0 +1,129 @@
+package org.sample.nio.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Serve JMX attributes from a snapshot taken at most once a second, so attributes read together
+ * are consistent and polling them does not copy histograms for every attribute.
+ */
+public class ReactorMetrics implements ReactorMetricsMXBean {
+
+    private static final long MAX_AGE_NANOS = 1_000_000_000L;
+
+    private final Supplier<MetricsSnapshot> source;
+
+    private MetricsSnapshot snapshot = null;
+    private long takenNanos = 0;
+
+    public ReactorMetrics(Supplier<MetricsSnapshot> source) {
+        this.source = source;
+    }
+
+    private synchronized MetricsSnapshot get() {
+        long now = System.nanoTime();
+        if (snapshot == null || now - takenNanos > MAX_AGE_NANOS) {
+            snapshot = source.get();
+            takenNanos = now;
+        }
+        return snapshot;
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    @Override
+    public long getSelects() {
+        return get().getSelects();
+    }
+
+    @Override
+    public long getSelectedKeys() {
+        return get().getSelectedKeys();
+    }
+
+    @Override
+    public long getWakeups() {
+        return get().getWakeups();
+    }
+
+    @Override
+    public long getSavedWakeups() {
+        return get().getSavedWakeups();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return get().getBytesRead();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return get().getBytesWritten();
+    }
+
+    @Override
+    public long getIdleTimeouts() {
+        return get().getIdleTimeouts();
+    }
+
+    @Override
+    public int getNumOfChannels() {
+        return get().getNumOfChannels();
+    }
+
+    @Override
+    public int getPendingRegistrations() {
+        return get().getPendingRegistrations();
+    }
+
+    @Override
+    public int getCompletionQueueDepth() {
+        return get().getCompletionQueueDepth();
+    }
+
+    @Override
+    public int getWorkerQueueDepth() {
+        return get().getWorkerQueueDepth();
+    }
+
+    @Override
+    public double getKeysPerSelectMean() {
+        return get().getKeysPerSelect().getMean();
+    }
+
+    @Override
+    public long getQueueDelayP50Micros() {
+        return micros(get().getQueueDelay().getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getQueueDelayP99Micros() {
+        return micros(get().getQueueDelay().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getHandleTimeP50Micros() {
+        return micros(get().getHandleTime().getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getHandleTimeP99Micros() {
+        return micros(get().getHandleTime().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getHandleTimeP999Micros() {
+        return micros(get().getHandleTime().getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public long getCompletionDelayP50Micros() {
+        return micros(get().getCompletionDelay().getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getCompletionDelayP99Micros() {
+        return micros(get().getCompletionDelay().getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,45 @@
+package org.sample.nio.metrics;
+
+/**
+ * JMX view of metrics of a reactor, latencies are in microseconds.
+ */
+public interface ReactorMetricsMXBean {
+
+    public long getSelects();
+
+    public long getSelectedKeys();
+
+    public long getWakeups();
+
+    public long getSavedWakeups();
+
+    public long getBytesRead();
+
+    public long getBytesWritten();
+
+    public long getIdleTimeouts();
+
+    public int getNumOfChannels();
+
+    public int getPendingRegistrations();
+
+    public int getCompletionQueueDepth();
+
+    public int getWorkerQueueDepth();
+
+    public double getKeysPerSelectMean();
+
+    public long getQueueDelayP50Micros();
+
+    public long getQueueDelayP99Micros();
+
+    public long getHandleTimeP50Micros();
+
+    public long getHandleTimeP99Micros();
+
+    public long getHandleTimeP999Micros();
+
+    public long getCompletionDelayP50Micros();
+
+    public long getCompletionDelayP99Micros();
+}
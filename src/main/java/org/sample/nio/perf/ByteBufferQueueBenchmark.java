@@ -1,19 +1,29 @@
 package org.sample.nio.perf;
 
 import  org.openjdk.jmh.annotations.*;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
 import org.sample.nio.buffer.ByteBufferQueue;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.Arrays;
 import java.util.stream.IntStream;
 
+/**
+ * enqueue only grows a queue, the others are mixed workloads drain what they queue in each invocation,
+ * with segments from a pool, so they measure the queue itself rather than allocation of its buffers.
+ */
 @State(Scope.Thread)
 public class ByteBufferQueueBenchmark {
 
     private ByteBufferQueue queue = null;
+    private ByteBufferQueue mixed = null;
     private int BLOCK_SZ = 128;
     private int NUM_OF_LINES = 32;
     private byte[] block = new byte[BLOCK_SZ];
+    private byte[] dst = new byte[BLOCK_SZ];
+    private NullChannel sink = new NullChannel();
 
     {
         Arrays.fill(block, (byte)'-');
@@ -23,6 +33,7 @@ public class ByteBufferQueueBenchmark {
     @Setup
     public void init() {
         this.queue = new ByteBufferQueue();
+        this.mixed = new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(512, 64));
     }
 
 
@@ -33,11 +44,91 @@ public class ByteBufferQueueBenchmark {
         }).mapToInt(i->i).sum();
     }
 
+    //Lines are copied in and out, block boundaries do not align with segments.
+    @Benchmark
+    public int enqueueDequeue() {
+        int n = 0;
+        for (int i = 0; i < NUM_OF_LINES; i++) {
+            mixed.equeue(block, 0, BLOCK_SZ);
+            if ((i & 1) == 1) {
+                n += mixed.dequeue(dst, 0, BLOCK_SZ);
+            }
+        }
+        while (!mixed.isEmpty()) {
+            n += mixed.dequeue(dst, 0, BLOCK_SZ);
+        }
+        return n;
+    }
+
+    //Lines are searched and skipped as a decoder does.
+    @Benchmark
+    public int enqueueIndexOf() {
+        for (int i = 0; i < NUM_OF_LINES; i++) {
+            mixed.equeue(block, 0, BLOCK_SZ);
+        }
+
+        int n = 0, idx;
+        while ((idx = mixed.indexOf((byte) '\n')) > -1) {
+            n += mixed.skip(idx + 1);
+        }
+        return n;
+    }
+
+    //Lines are written out by gathering writes as a connection does.
+    @Benchmark
+    public long enqueueWriteTo() throws IOException {
+        for (int i = 0; i < NUM_OF_LINES; i++) {
+            mixed.equeue(block, 0, BLOCK_SZ);
+        }
+
+        long n = 0;
+        while (!mixed.isEmpty()) {
+            n += mixed.writeTo(sink);
+        }
+        return n;
+    }
+
 
     @TearDown
     public  void destory (){
         queue.dequeue(BLOCK_SZ * NUM_OF_LINES);
         this.queue = null;
+        this.mixed.clear();
+    }
+
+    //A channel takes every byte of its sources, so benchmark stays off the network stack.
+    private static class NullChannel implements GatheringByteChannel {
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long n = 0;
+            for (int i = offset; i < offset + length; i++) {
+                n += srcs[i].remaining();
+                srcs[i].position(srcs[i].limit());
+            }
+            return n;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return this.write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
     }
 
 }
@@ -0,0 +1,165 @@
+package org.sample.nio.perf;
+
+import org.openjdk.jmh.annotations.*;
+import org.sample.nio.Reactor;
+import org.sample.nio.ServerBootstrap;
+import org.sample.nio.WaterMark;
+import org.sample.nio.echo.server.EchoHandlerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of lines through a reactor serving echo handlers over loopback, client and server share this JVM.
+ * requestResponse sends a line and waits for its echo, pipelined sends 16 lines at once and waits for all of them,
+ * so its scores are per batch. Each benchmark thread owns its connections and uses them in turn, which keeps
+ * all of them registered to the reactor while only one is active at a time.
+ * SampleTime reports percentiles of round trip time, e.g. p0.50, p0.99 and p0.999.
+ * 10000 connections take 20000 file descriptors per benchmark thread, raise ulimit -n accordingly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EchoBenchmark {
+
+    private static final int PIPELINE_DEPTH = 16;
+
+    @Param({"1", "100", "10000"})
+    private int connections;
+
+    //Bytes of a line including its delimiter.
+    @Param({"16", "256", "4096", "65536"})
+    private int messageSize;
+
+    private Reactor reactor = null;
+    private ServerSocketChannel listener = null;
+
+    @Setup
+    public void startServer() throws IOException {
+        //Input of a connection must hold the largest line at once, otherwise it is closed as overflowed.
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .handlerFactory(new EchoHandlerFactory())
+                .childOption(StandardSocketOptions.TCP_NODELAY, true)
+                .backlog(1024)
+                .waterMark(new WaterMark(128 * 1024, 256 * 1024));
+
+        this.reactor = bootstrap.newReactor();
+        this.reactor.start();
+        this.listener = bootstrap.bind(reactor, new InetSocketAddress("127.0.0.1", 0)).get(0);
+    }
+
+    @TearDown
+    public void stopServer() throws IOException {
+        this.listener.close();
+        this.reactor.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        private Selector selector = null;
+        private SelectionKey[] keys = null;
+        private int next = 0;
+
+        //PIPELINE_DEPTH lines back to back, a single request is the first of them.
+        private ByteBuffer request = null;
+        private ByteBuffer response = null;
+        private int messageSize = 0;
+
+        @Setup
+        public void connect(EchoBenchmark server) throws IOException {
+            SocketAddress address = server.listener.getLocalAddress();
+            this.messageSize = server.messageSize;
+            this.selector = Selector.open();
+            this.keys = new SelectionKey[server.connections];
+
+            for (int i = 0; i < keys.length; i++) {
+                SocketChannel sc = SocketChannel.open(address);
+                sc.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                sc.configureBlocking(false);
+                keys[i] = sc.register(selector, 0);
+            }
+
+            this.request = ByteBuffer.allocateDirect(PIPELINE_DEPTH * messageSize);
+            this.response = ByteBuffer.allocateDirect(PIPELINE_DEPTH * messageSize);
+            for (int i = 0; i < PIPELINE_DEPTH; i++) {
+                for (int j = 1; j < messageSize; j++) {
+                    request.put((byte) ('a' + j % 26));
+                }
+                request.put((byte) '\n');
+            }
+            this.verify();
+        }
+
+        @TearDown
+        public void close() throws IOException {
+            this.verify(); //Echoes still match after the measurement loaded the server.
+            for (SelectionKey key : keys) {
+                key.channel().close();
+            }
+            this.selector.close();
+        }
+
+        //Scores are meaningless unless the server echoes what it is sent, check a pipelined batch in full.
+        private void verify() throws IOException {
+            this.roundTrip(PIPELINE_DEPTH);
+            request.flip();
+            response.flip();
+            if (!response.equals(request)) {
+                throw new IllegalStateException("echo of " + PIPELINE_DEPTH + " lines of " + messageSize
+                        + " bytes does not match the request.");
+            }
+        }
+
+        /*
+          Write lines and read their echoes on next connection, both directions progress together,
+          otherwise large pipelined lines would fill socket buffers of both sides and stall.
+          Selector is only entered when neither direction can progress.
+         */
+        int roundTrip(int nMessages) throws IOException {
+            SelectionKey key = keys[next];
+            next = next + 1 == keys.length ? 0 : next + 1;
+
+            SocketChannel sc = (SocketChannel) key.channel();
+            int length = nMessages * messageSize;
+            request.clear().limit(length);
+            response.clear().limit(length);
+
+            while (response.hasRemaining()) {
+                int nw = request.hasRemaining() ? sc.write(request) : 0;
+                int nr = sc.read(response);
+                if (nr < 0) {
+                    throw new EOFException("connection closed by server.");
+                }
+
+                if (nw == 0 && nr == 0) {
+                    key.interestOps(request.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                    selector.select();
+                    selector.selectedKeys().clear();
+                }
+            }
+            key.interestOps(0);
+
+            return response.get(length - 1); //Delimiter
+        }
+    }
+
+    @Benchmark
+    public int requestResponse(Client client) throws IOException {
+        return client.roundTrip(1);
+    }
+
+    @Benchmark
+    public int pipelined(Client client) throws IOException {
+        return client.roundTrip(PIPELINE_DEPTH);
+    }
+}
@@ -0,0 +1,90 @@
+package org.sample.nio.perf;
+
+import org.openjdk.jmh.annotations.*;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.codec.LengthField;
+import org.sample.nio.buffer.codec.LengthFieldFrameDecoder;
+import org.sample.nio.buffer.codec.LengthFieldFrameEncoder;
+import org.sample.nio.buffer.codec.TextLineEncoder;
+import org.sample.nio.buffer.codec.TextLineViewDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Echo a message of equal payload size from an input queue to an output queue, by text lines which
+ * scan payload for their delimiter, or by length-prefixed frames which only read their header.
+ * Input is queued in 16 KB reads, so large messages span several reads as they do on a connection.
+ */
+@State(Scope.Thread)
+public class FrameCodecBenchmark {
+
+    private static final int READ_SZ = 16 * 1024;
+
+    @Param({"16", "128", "1024", "8192", "65536"})
+    private int payloadSize;
+
+    @Param({"INT32", "VARINT"})
+    private LengthField lengthField;
+
+    private ByteBufferQueue inputQ = null;
+    private ByteBufferQueue outputQ = null;
+
+    private byte[] line = null;
+    private byte[] frame = null;
+
+    private TextLineViewDecoder lineDecoder = new TextLineViewDecoder(StandardCharsets.US_ASCII);
+    private TextLineEncoder lineEncoder = new TextLineEncoder(StandardCharsets.US_ASCII);
+
+    private LengthFieldFrameDecoder frameDecoder = null;
+    private LengthFieldFrameEncoder frameEncoder = null;
+
+    @Setup
+    public void init() {
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) '-');
+
+        this.line = Arrays.copyOf(payload, payloadSize + 1);
+        line[payloadSize] = '\n';
+
+        this.frameDecoder = new LengthFieldFrameDecoder(lengthField, 1 << 20);
+        this.frameEncoder = new LengthFieldFrameEncoder(lengthField, 1 << 20);
+        ByteBuffer encoded = frameEncoder.encode(ByteBuffer.wrap(payload));
+        this.frame = Arrays.copyOf(encoded.array(), encoded.remaining());
+
+        this.inputQ = new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(READ_SZ, 64));
+        this.outputQ = new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(READ_SZ, 64));
+    }
+
+    @Benchmark
+    public int textLine() {
+        CharSequence s = null;
+        for (int off = 0; s == null; off += READ_SZ) {
+            inputQ.equeue(line, off, Math.min(READ_SZ, line.length - off));
+            s = lineDecoder.decode(inputQ);
+        }
+        int n = lineEncoder.encode(s, outputQ);
+        outputQ.skip(n);
+        return n;
+    }
+
+    @Benchmark
+    public int lengthPrefixed() {
+        ByteBuffer payload = null;
+        for (int off = 0; payload == null; off += READ_SZ) {
+            inputQ.equeue(frame, off, Math.min(READ_SZ, frame.length - off));
+            payload = frameDecoder.decode(inputQ);
+        }
+        int n = frameEncoder.encode(payload, outputQ);
+        outputQ.skip(n);
+        return n;
+    }
+
+    @TearDown
+    public void destory() {
+        inputQ.clear();
+        outputQ.clear();
+    }
+}
@@ -0,0 +1,66 @@
+package org.sample.nio.perf;
+
+import org.openjdk.jmh.annotations.*;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.codec.TextLineDecoder;
+import org.sample.nio.buffer.codec.TextLineEncoder;
+import org.sample.nio.buffer.codec.TextLineViewDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Echo a line from an input queue to an output queue.
+ * string decodes to a String and encodes a buffer per line, view decodes into a reused char sequence
+ * and encodes straight into output queue. Lines are ASCII or UTF-8 with multi-byte characters.
+ */
+@State(Scope.Thread)
+public class LineCodecBenchmark {
+
+    @Param({"16", "128", "1024"})
+    private int lineLength;
+
+    @Param({"ascii", "utf8"})
+    private String text;
+
+    private ByteBufferQueue inputQ = null;
+    private ByteBufferQueue outputQ = null;
+    private byte[] line = null;
+
+    private TextLineDecoder stringDecoder = new TextLineDecoder();
+    private TextLineViewDecoder viewDecoder = new TextLineViewDecoder(StandardCharsets.UTF_8);
+    private TextLineEncoder encoder = new TextLineEncoder(StandardCharsets.UTF_8);
+
+    @Setup
+    public void init() {
+        char[] chars = new char["ascii".equals(text) ? lineLength - 1 : (lineLength - 1) / 2];
+        Arrays.fill(chars, "ascii".equals(text) ? '-' : 'é');
+        this.line = (new String(chars) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        this.inputQ = new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(4096, 64));
+        this.outputQ = new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(4096, 64));
+    }
+
+    @Benchmark
+    public int string() {
+        inputQ.equeue(line, 0, line.length);
+        int n = outputQ.equeue(encoder.encode(stringDecoder.decode(inputQ)));
+        outputQ.skip(n);
+        return n;
+    }
+
+    @Benchmark
+    public int view() {
+        inputQ.equeue(line, 0, line.length);
+        int n = encoder.encode(viewDecoder.decode(inputQ), outputQ);
+        outputQ.skip(n);
+        return n;
+    }
+
+    @TearDown
+    public void destory() {
+        inputQ.clear();
+        outputQ.clear();
+    }
+}
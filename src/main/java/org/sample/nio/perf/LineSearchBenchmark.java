@@ -0,0 +1,61 @@
+package org.sample.nio.perf;
+
+import org.openjdk.jmh.annotations.*;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.codec.TextLineDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Delimiter search of lines from 16 B to 64 KB.
+ * indexOf searches a fully queued line, decodeChunked feeds a line in 1 KB reads and decodes
+ * after every read as a connection does, which relies on the resumable search of decoder.
+ */
+@State(Scope.Thread)
+public class LineSearchBenchmark {
+
+    private static final int READ_SZ = 1024;
+
+    @Param({"16", "128", "1024", "8192", "65536"})
+    private int lineLength;
+
+    private ByteBufferQueue queue = null;
+    private TextLineDecoder decoder = null;
+    private byte[] line = null;
+
+    @Setup
+    public void init() {
+        this.line = new byte[lineLength];
+        Arrays.fill(line, (byte) '-');
+        line[lineLength - 1] = '\n';
+
+        this.queue = new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(4096, 64));
+        this.decoder = new TextLineDecoder();
+    }
+
+    @Benchmark
+    public int indexOf() {
+        queue.equeue(ByteBuffer.wrap(line));
+        int idx = queue.indexOf((byte) '\n');
+        queue.skip(idx + 1);
+        return idx;
+    }
+
+    @Benchmark
+    public String decodeChunked() {
+        String s = null;
+        for (int off = 0; off < lineLength; off += READ_SZ) {
+            queue.equeue(ByteBuffer.wrap(line, off, Math.min(READ_SZ, lineLength - off)));
+            s = decoder.decode(queue);
+        }
+        return s;
+    }
+
+    @TearDown
+    public void destory() {
+        queue.skip(queue.size());
+        this.queue = null;
+    }
+}
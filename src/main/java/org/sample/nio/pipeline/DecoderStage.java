@@ -0,0 +1,41 @@
+package org.sample.nio.pipeline;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.codec.ByteBufferQueueDecoder;
+
+import java.util.function.Supplier;
+
+/**
+ * Decode messages from input queue and pass them on, it returns early once flush policy says so.
+ * Decoders keep state of partial messages, so each connection gets its own from supplier,
+ * a stateless one is shared by a supplier returns the same instance.
+ */
+public class DecoderStage<T> implements IStage {
+
+    private final Supplier<? extends ByteBufferQueueDecoder<T>> decoders;
+
+    public DecoderStage(Supplier<? extends ByteBufferQueueDecoder<T>> decoders) {
+        this.decoders = decoders;
+    }
+
+    @Override
+    public void onRead(StageContext ctx, Object msg) {
+        ByteBufferQueueDecoder<T> decoder = ctx.state();
+        ByteBufferQueue queue = (ByteBufferQueue) msg;
+        T decoded = null;
+        int nMessages = 0;
+
+        while ((decoded = decoder.decode(queue)) != null) {
+            ctx.fireRead(decoded);
+
+            if (ctx.shouldFlush(++nMessages)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Object newState() {
+        return decoders.get();
+    }
+}
@@ -0,0 +1,32 @@
+package org.sample.nio.pipeline;
+
+import org.sample.nio.buffer.codec.ByteBufferQueueEncoder;
+
+import java.util.function.Supplier;
+
+/**
+ * Encode outbound messages straight into output queue of connection, so outbound messages do not
+ * reach stages in front of it. Inbound messages are passed on untouched.
+ * Encoders may keep scratch buffers, so each connection gets its own from supplier,
+ * a stateless one is shared by a supplier returns the same instance.
+ */
+public class EncoderStage<T> implements IStage {
+
+    private final Supplier<? extends ByteBufferQueueEncoder<T>> encoders;
+
+    public EncoderStage(Supplier<? extends ByteBufferQueueEncoder<T>> encoders) {
+        this.encoders = encoders;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onWrite(StageContext ctx, Object msg) {
+        ByteBufferQueueEncoder<T> encoder = ctx.state();
+        encoder.encode((T) msg, ctx.getOutputQ());
+    }
+
+    @Override
+    public Object newState() {
+        return encoders.get();
+    }
+}
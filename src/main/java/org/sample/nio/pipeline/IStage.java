@@ -0,0 +1,43 @@
+package org.sample.nio.pipeline;
+
+/**
+ * A stage of a pipeline, e.g. framing, decoding, business logic or encoding.
+ * Inbound messages flow from the first stage to the last one, outbound messages the other way round,
+ * both are passed by reference. A stage instance is shared by pipelines of all connections, so it
+ * must be stateless, per-connection state is kept in the slot created by newState().
+ */
+public interface IStage {
+
+    /**
+     * Process an inbound message, pass results on to next stage by ctx.fireRead().
+     * @param ctx
+     * @param msg Input queue of connection for the first stage, messages of previous stage for others.
+     */
+    public default void onRead(StageContext ctx, Object msg) {
+        ctx.fireRead(msg);
+    }
+
+    /**
+     * Process an outbound message, pass results on to previous stage by ctx.write(),
+     * the first stage writes buffers to output queue of connection.
+     * @param ctx
+     * @param msg
+     */
+    public default void onWrite(StageContext ctx, Object msg) {
+        ctx.write(msg);
+    }
+
+    /**
+     * @return State of this stage for a new connection, available by ctx.state(), null if stateless.
+     */
+    public default Object newState() {
+        return null;
+    }
+
+    /**
+     * @return true if this stage may block its calling thread.
+     */
+    public default boolean isBlocking() {
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package org.sample.nio.pipeline;
+
+import org.sample.nio.FlushPolicy;
+import org.sample.nio.IHandler;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.IByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * A handler chains stages of a connection. Input queue of the connection is passed to the first stage,
+ * buffers written beyond the first stage are queued to output of the connection.
+ */
+public class Pipeline implements IHandler {
+
+    private final IStage[] stages;
+    private final StageContext[] contexts;
+
+    private final ByteBufferQueue inputQ;
+    private final ByteBufferQueue outputQ;
+
+    private final FlushPolicy flushPolicy;
+
+    Pipeline(IStage[] stages, Supplier<IByteBufferPool> pool, FlushPolicy flushPolicy) {
+        this.stages = stages;
+        this.contexts = new StageContext[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            this.contexts[i] = new StageContext(this, i, stages[i].newState());
+        }
+
+        this.inputQ = new ByteBufferQueue(pool);
+        this.outputQ = new ByteBufferQueue(pool);
+        this.flushPolicy = flushPolicy;
+    }
+
+    @Override
+    public void handle() {
+        this.fireRead(0, inputQ);
+    }
+
+    @Override
+    public ByteBufferQueue getOutputQ() {
+        return outputQ;
+    }
+
+    @Override
+    public ByteBufferQueue getInputQ() {
+        return inputQ;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        for (IStage stage : stages) {
+            if (stage.isBlocking()) return true;
+        }
+        return false;
+    }
+
+    void fireRead(int index, Object msg) {
+        if (index == stages.length) {
+            throw new IllegalStateException("inbound " + msg.getClass().getName() + " is not consumed by any stage.");
+        }
+        stages[index].onRead(contexts[index], msg);
+    }
+
+    void write(int index, Object msg) {
+        if (index >= 0) {
+            stages[index].onWrite(contexts[index], msg);
+            return;
+        }
+
+        if (!(msg instanceof ByteBuffer)) {
+            throw new IllegalStateException("outbound " + msg.getClass().getName() + " is not encoded by any stage.");
+        }
+        outputQ.equeue((ByteBuffer) msg);
+    }
+
+    boolean shouldFlush(int nMessages) {
+        return flushPolicy.shouldFlush(nMessages, outputQ.size());
+    }
+}
@@ -0,0 +1,40 @@
+package org.sample.nio.pipeline;
+
+import org.sample.nio.FlushPolicy;
+import org.sample.nio.IHandler;
+import org.sample.nio.IOHandlerFactory;
+import org.sample.nio.buffer.IByteBufferPool;
+
+import java.util.function.Supplier;
+
+/**
+ * Create a pipeline per connection, stages are shared by all of them and only their state is per connection.
+ */
+public class PipelineFactory extends IOHandlerFactory {
+
+    private final IStage[] stages;
+    private final FlushPolicy flushPolicy;
+
+    public PipelineFactory(Supplier<IByteBufferPool> pool, IStage... stages) {
+        this(pool, FlushPolicy.END_OF_BATCH, stages);
+    }
+
+    /**
+     * @param pool        Buffer pool of input and output queues.
+     * @param flushPolicy
+     * @param stages      Stages in inbound order.
+     */
+    public PipelineFactory(Supplier<IByteBufferPool> pool, FlushPolicy flushPolicy, IStage... stages) {
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("a pipeline needs at least one stage.");
+        }
+        this.stages = stages.clone();
+        this.setBufferPool(pool);
+        this.flushPolicy = flushPolicy;
+    }
+
+    @Override
+    public IHandler createHandler() {
+        return new Pipeline(stages, this.getBufferPool(), flushPolicy);
+    }
+}
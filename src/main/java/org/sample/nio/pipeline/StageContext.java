@@ -0,0 +1,53 @@
+package org.sample.nio.pipeline;
+
+import org.sample.nio.buffer.ByteBufferQueue;
+
+/**
+ * Binds a stage to the pipeline of a connection, it passes messages on to neighbours of the stage
+ * and holds state of the stage for this connection.
+ */
+public class StageContext {
+
+    private final Pipeline pipeline;
+    private final int index;
+    private final Object state;
+
+    StageContext(Pipeline pipeline, int index, Object state) {
+        this.pipeline = pipeline;
+        this.index = index;
+        this.state = state;
+    }
+
+    /**
+     * Pass an inbound message on to next stage.
+     * @param msg
+     */
+    public void fireRead(Object msg) {
+        pipeline.fireRead(index + 1, msg);
+    }
+
+    /**
+     * Pass an outbound message on to previous stage.
+     * @param msg
+     */
+    public void write(Object msg) {
+        pipeline.write(index - 1, msg);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <S> S state() {
+        return (S) state;
+    }
+
+    public ByteBufferQueue getOutputQ() {
+        return pipeline.getOutputQ();
+    }
+
+    /**
+     * @param nMessages Number of messages a stage has passed on since the pipeline is called.
+     * @return true if the stage should return, so output of connection is written out before it goes on.
+     */
+    public boolean shouldFlush(int nMessages) {
+        return pipeline.shouldFlush(nMessages);
+    }
+}
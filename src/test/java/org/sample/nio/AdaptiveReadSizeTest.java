@@ -0,0 +1,41 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.AdaptiveReadSize;
+
+
+public class AdaptiveReadSizeTest {
+
+    @org.junit.Test
+    public void testGrow() throws Exception {
+        AdaptiveReadSize size = new AdaptiveReadSize();
+        Assert.assertEquals(1024, size.next());
+
+        size.record(1024);
+        Assert.assertEquals(4096, size.next());
+
+        for (int i = 0; i < 10; i++) {
+            size.record(size.next());
+        }
+        Assert.assertEquals("Size should be capped.", 64 * 1024, size.next());
+    }
+
+    @org.junit.Test
+    public void testShrink() throws Exception {
+        AdaptiveReadSize size = new AdaptiveReadSize();
+
+        size.record(100);
+        Assert.assertEquals("A single small read should not shrink size.", 1024, size.next());
+        size.record(100);
+        Assert.assertEquals(512, size.next());
+
+        size.record(100);
+        size.record(400);
+        Assert.assertEquals("Reads fit half of size should keep it.", 512, size.next());
+
+        for (int i = 0; i < 20; i++) {
+            size.record(1);
+        }
+        Assert.assertEquals("Size should be floored.", 64, size.next());
+    }
+}
@@ -4,11 +4,16 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.sample.nio.buffer.ByteBufferPoolFactory;
 import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.IByteBufferPool;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -115,4 +120,273 @@ public class ByteBufferQueueTest {
                 }
         );
     }
-}
\ No newline at end of file
+
+    @org.junit.Test
+    public void testWriteToReadFrom() throws Exception {
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+
+        queues.forEach(
+                q -> {
+                    try {
+                        ByteBufferQueue peer = createQ(8);
+                        q.equeue(ByteBuffer.wrap(line.getBytes()));
+
+                        while (!q.isEmpty()) {
+                            q.writeTo(pipe.sink());
+                        }
+
+                        while (peer.readFrom(pipe.source()) > 0)
+                            ;
+
+                        Assert.assertTrue("Written bytes should be removed from queue.", q.isEmpty());
+                        Assert.assertEquals(line, new String(peer.dequeue().array()));
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testEqueueSegment() throws Exception {
+        queues.forEach(
+                q -> {
+                    ByteBuffer segment = ByteBuffer.wrap(("#" + line).getBytes());
+                    segment.get(); //Segment does not start from zero.
+
+                    Assert.assertEquals(line.length(), q.equeueSegment(segment));
+                    Assert.assertEquals(line.length(), q.equeue(ByteBuffer.wrap(line.getBytes())));
+
+                    Assert.assertEquals(line + line, new String(q.dequeue().array()));
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testTransferTo() throws Exception {
+        String big = String.join("", java.util.Collections.nCopies(64, line));
+
+        queues.forEach(
+                q -> {
+                    ByteBufferQueue dest = createQ(16);
+                    dest.equeue(ByteBuffer.wrap(line.getBytes()));
+                    q.equeue(ByteBuffer.wrap(big.getBytes()));
+
+                    Assert.assertEquals(big.length() - 1, q.transferTo(dest, big.length() - 1));
+                    Assert.assertEquals(big.substring(big.length() - 1), new String(q.dequeue().array()));
+                    Assert.assertEquals(line + big.substring(0, big.length() - 1), new String(dest.dequeue().array()));
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testDequeueSlice() throws Exception {
+        queues.forEach(
+                q -> {
+                    q.equeue(ByteBuffer.wrap(line.getBytes()));
+                    q.equeue(ByteBuffer.wrap(line.getBytes()));
+
+                    for (int i = 0; i < 2; i++) {
+                        ByteBuffer view = q.dequeueSlice(line.length());
+                        byte[] bytes = new byte[view.remaining()];
+                        view.get(bytes);
+
+                        Assert.assertEquals(line, new String(bytes));
+                    }
+                    Assert.assertTrue(q.isEmpty());
+                    Assert.assertNull(q.dequeueSlice(1));
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testIndexOfFrom() throws Exception {
+        byte[] bytes = new byte[257];
+        Arrays.fill(bytes, (byte) '-');
+
+        queues.forEach(
+                q -> {
+                    //Delimiter at every offset, so matches land on both word and segment boundaries.
+                    for (int p = 0; p < bytes.length; p++) {
+                        bytes[p] = '\n';
+                        q.equeue(ByteBuffer.wrap(bytes));
+                        bytes[p] = '-';
+
+                        Assert.assertEquals(p, q.indexOf((byte) '\n'));
+                        Assert.assertEquals(p, q.indexOf((byte) '\n', p));
+                        Assert.assertEquals(-1, q.indexOf((byte) '\n', p + 1));
+                        Assert.assertEquals(-1, q.indexOf((byte) '\r'));
+
+                        q.skip(1 + p % 3); //Move head within its segment.
+                        Assert.assertEquals(p < 1 + p % 3 ? -1 : p - 1 - p % 3, q.indexOf((byte) '\n'));
+                        q.skip(q.size());
+                    }
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testClear() throws Exception {
+        queues.forEach(
+                q -> {
+                    q.equeue(ByteBuffer.wrap(line.getBytes()));
+                    q.dequeue(1);
+                    q.clear();
+
+                    Assert.assertTrue("Q should be empty after clear", q.isEmpty());
+                    Assert.assertEquals(0, q.size());
+                    Assert.assertEquals(-1, q.indexOf((byte) ':'));
+
+                    q.equeue(ByteBuffer.wrap(line.getBytes()));
+                    Assert.assertEquals(line, new String(q.dequeue().array()));
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testEqueueArray() throws Exception {
+        byte[] bytes = line.getBytes();
+
+        queues.forEach(q -> {
+            Assert.assertEquals(bytes.length, q.equeue(bytes, 0, bytes.length));
+            Assert.assertEquals(4, q.equeue(bytes, 2, 4));
+            Assert.assertEquals(bytes.length + 4, q.size());
+
+            Assert.assertEquals(line, new String(q.dequeue(bytes.length).array()));
+            Assert.assertEquals(line.substring(2, 6), new String(q.dequeue().array()));
+        });
+    }
+
+    @org.junit.Test
+    public void testMixedWorkload() throws Exception {
+        Random random = new Random(42);
+        byte[] bytes = line.getBytes();
+
+        queues.forEach(q -> {
+            //Bytes expected in queue, as a window of a StringBuilder.
+            StringBuilder expected = new StringBuilder();
+
+            //Head and tail chase each other around the ring, and grow it now and then.
+            for (int i = 0; i < 2000; i++) {
+                int op = random.nextInt(4);
+                if (op < 2 || q.isEmpty()) {
+                    int n = random.nextInt(bytes.length);
+                    q.equeue(bytes, 0, n);
+                    expected.append(line, 0, n);
+                } else if (op == 2) {
+                    int n = 1 + random.nextInt(q.size());
+                    Assert.assertEquals(expected.substring(0, n), new String(q.dequeue(n).array()));
+                    expected.delete(0, n);
+                } else {
+                    int from = random.nextInt(q.size());
+                    Assert.assertEquals(expected.indexOf(":", from), q.indexOf((byte) ':', from));
+                    Assert.assertEquals(expected.charAt(from), (char) q.get(from));
+                }
+                Assert.assertEquals(expected.length(), q.size());
+            }
+
+            Assert.assertEquals(expected.toString(), new String(q.dequeue().array()));
+        });
+    }
+
+    @org.junit.Test
+    public void testWriteToManySegments() throws Exception {
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        String big = String.join("", java.util.Collections.nCopies(40, line));
+
+        queues.forEach(
+                q -> {
+                    try {
+                        ByteBufferQueue peer = createQ(1024);
+                        q.equeue(ByteBuffer.wrap(big.getBytes()));
+                        q.equeueSegment(ByteBuffer.wrap(line.getBytes()).asReadOnlyBuffer());
+                        q.equeue(ByteBuffer.wrap(line.getBytes()));
+                        q.skip(1);
+
+                        //More segments than a single gathering write takes, pipe takes them partially.
+                        while (!q.isEmpty()) {
+                            q.writeTo(pipe.sink());
+                            while (peer.readFrom(pipe.source()) > 0)
+                                ;
+                        }
+
+                        String all = big + line + line;
+                        Assert.assertEquals(all.substring(1), new String(peer.dequeue().array()));
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+        );
+    }
+
+    @org.junit.Test
+    public void testTransferToReleasesSegments() throws Exception {
+        TrackingPool pool = new TrackingPool(ByteBufferPoolFactory.newDirectByteBufferPool(1024, 1024, 1 << 20));
+        ByteBufferQueue q = new ByteBufferQueue(() -> pool);
+        ByteBufferQueue dest = new ByteBufferQueue(() -> pool);
+
+        byte[] bytes = new byte[4096];
+        Arrays.fill(bytes, (byte) '-');
+        q.equeue(ByteBuffer.wrap(bytes));
+        q.skip(100); //Head segment is partly read.
+
+        Assert.assertEquals(3000, q.transferTo(dest, 3000));
+        Assert.assertEquals(996, q.size());
+        Assert.assertEquals(3000, dest.size());
+
+        q.clear();
+        dest.clear();
+        Assert.assertTrue("Every pooled segment should be released.", pool.outstanding.isEmpty());
+        Assert.assertEquals("Only pooled segments should be released.", 0, pool.foreign);
+    }
+
+    @org.junit.Test
+    public void testEqueueSegmentKeepsLimit() throws Exception {
+        byte[] backing = new byte[64];
+        Arrays.fill(backing, (byte) '#');
+        ByteBuffer segment = ByteBuffer.wrap(backing, 0, 8);
+
+        queues.forEach(q -> {
+            q.equeueSegment(segment.duplicate());
+            q.equeue(ByteBuffer.wrap(line.getBytes()));
+
+            Assert.assertEquals("########" + line, new String(q.dequeue().array()));
+            Assert.assertEquals("Bytes beyond limit of segment should be untouched.", '#', backing[8]);
+        });
+    }
+
+    //Pool remembers buffers it has handed out, by identity.
+    private static class TrackingPool implements IByteBufferPool {
+        private final IByteBufferPool pool;
+        private final Set<ByteBuffer> outstanding = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int foreign = 0;
+
+        TrackingPool(IByteBufferPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public ByteBuffer acquire() {
+            ByteBuffer buf = pool.acquire();
+            outstanding.add(buf);
+            return buf;
+        }
+
+        @Override
+        public ByteBuffer acquire(int minSize) {
+            ByteBuffer buf = pool.acquire(minSize);
+            outstanding.add(buf);
+            return buf;
+        }
+
+        @Override
+        public void release(ByteBuffer buf) {
+            if (!outstanding.remove(buf)) {
+                foreign++;
+            }
+            pool.release(buf);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferQueue;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+
+public class ChannelWrapperTest {
+
+    //Handler consumes no input until it is told to, its pending output keeps input queue from overflowing.
+    private static class StalledHandler implements IHandler {
+
+        private final ByteBufferQueue inputQ = new ByteBufferQueue();
+        private final ByteBufferQueue outputQ = new ByteBufferQueue();
+        private volatile boolean consuming = false;
+
+        @Override
+        public void handle() {
+            if (consuming) {
+                inputQ.skip(inputQ.size());
+            }
+        }
+
+        @Override
+        public ByteBufferQueue getOutputQ() {
+            return outputQ;
+        }
+
+        @Override
+        public ByteBufferQueue getInputQ() {
+            return inputQ;
+        }
+    }
+
+    @org.junit.Test
+    public void testInputSuspension() throws Exception {
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        SelectorLoop loop = new SelectorLoop(reactor);
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open();
+             Selector sel = Selector.open()) {
+            listener.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            SocketChannel client = SocketChannel.open();
+            client.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            client.connect(listener.getLocalAddress());
+            SocketChannel sc = listener.accept();
+            sc.setOption(StandardSocketOptions.SO_SNDBUF, 4096);
+            sc.configureBlocking(false);
+
+            try {
+                StalledHandler handler = new StalledHandler();
+                handler.getOutputQ().equeue(new byte[100], 0, 100);
+
+                ChannelWrapper wrapper = new ChannelWrapper(sc, handler);
+                wrapper.setBackpressure(new WaterMark(1024, 4096), null);
+                wrapper.setLoop(loop);
+                SelectionKey key = sc.register(sel, SelectionKey.OP_READ, wrapper);
+                wrapper.setKey(key);
+
+                client.write(ByteBuffer.allocate(16 * 1024));
+                while (sel.select(1000) == 0 || !key.isReadable()) {
+                    sel.selectedKeys().clear();
+                }
+                sel.selectedKeys().clear();
+
+                //Fill socket buffers while client does not read, so output of handler stays pending.
+                ByteBuffer junk = ByteBuffer.allocate(1024);
+                while (sc.write(junk) > 0) {
+                    junk.clear();
+                }
+
+                wrapper.processInline();
+                Assert.assertTrue("Input queue should reach its high water mark.", handler.getInputQ().size() >= 4096);
+                Assert.assertEquals("Reading should stop while input queue is full and output is pending.",
+                        SelectionKey.OP_WRITE, key.interestOps());
+
+                //Client drains, output is written out and handler catches up with its input.
+                handler.consuming = true;
+                client.configureBlocking(false);
+                while (sel.select(10) == 0 || !key.isWritable()) {
+                    junk.clear();
+                    while (client.read(junk) > 0) {
+                        junk.clear();
+                    }
+                }
+                sel.selectedKeys().clear();
+
+                wrapper.processInline();
+                Assert.assertTrue("Output should be written out.", handler.getOutputQ().isEmpty());
+                Assert.assertEquals("Reading should resume once handler consumes its input.",
+                        SelectionKey.OP_READ, key.interestOps());
+            } finally {
+                client.close();
+                sc.close();
+            }
+        } finally {
+            loop.close();
+            reactor.stop();
+        }
+    }
+
+    @org.junit.Test
+    public void testCloseOnce() throws Exception {
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        SelectorLoop loop = new SelectorLoop(reactor);
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            try (SocketChannel client = SocketChannel.open(listener.getLocalAddress())) {
+                Assert.assertTrue(client.isConnected());
+                ChannelWrapper wrapper = loop.registerChannel(listener.accept(), new StalledHandler());
+                Assert.assertEquals(1, loop.getNumOfChannels());
+
+                //e.g. a worker fails processing it while its idle timer expires on the loop.
+                loop.unRegisterChannel(wrapper);
+                loop.unRegisterChannel(wrapper);
+
+                Assert.assertFalse("Channel should be closed.", wrapper.getChannel().isOpen());
+                Assert.assertEquals("A connection should be accounted once.", 0, loop.getNumOfChannels());
+            }
+        } finally {
+            loop.close();
+            reactor.stop();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.echo.server.EchoHandler;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+
+public class FootprintTest {
+
+    //Heap retained by an accepted connection waits for its first input, socket and selection key excluded.
+    @org.junit.Test
+    public void testIdleConnection() throws Exception {
+        Set<Object> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+        long size = exclusiveSize(new ChannelWrapper(null, new EchoHandler()),
+                new ChannelWrapper(null, new EchoHandler()), retained);
+
+        for (Object o : retained) {
+            Assert.assertFalse("An idle connection should hold no buffer, but holds " + o.getClass().getName(),
+                    o instanceof ByteBuffer || o instanceof ByteBuffer[]);
+        }
+        Assert.assertTrue("An idle connection retains " + size + " bytes.", size < 512);
+    }
+
+    /*
+      Shallow sizes of objects a connection holds alone, estimated for compressed references. It is walked side by side
+      with another connection, objects both of them reference (e.g. pools and shared constants) are not counted.
+     */
+    private static long exclusiveSize(Object a, Object b, Set<Object> retained) throws IllegalAccessException {
+        if (a == null || a == b || !retained.add(a)) {
+            return 0;
+        }
+
+        Class<?> c = a.getClass();
+        if (b != null && b.getClass() != c) {
+            b = null;
+        }
+
+        if (c.isArray()) {
+            int n = Array.getLength(a);
+            long size = align(16 + (long) n * sizeOf(c.getComponentType()));
+            if (!c.getComponentType().isPrimitive()) {
+                for (int i = 0; i < n; i++) {
+                    Object other = b != null && i < Array.getLength(b) ? Array.get(b, i) : null;
+                    size += exclusiveSize(Array.get(a, i), other, retained);
+                }
+            }
+            return size;
+        }
+
+        long size = 12; //Object header.
+        List<Field> references = new ArrayList<>();
+        for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+            for (Field f : k.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) {
+                    continue;
+                }
+                size += sizeOf(f.getType());
+                if (!f.getType().isPrimitive()) {
+                    f.setAccessible(true);
+                    references.add(f);
+                }
+            }
+        }
+
+        size = align(size);
+        for (Field f : references) {
+            size += exclusiveSize(f.get(a), b != null ? f.get(b) : null, retained);
+        }
+        return size;
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        if (type == byte.class || type == boolean.class) return 1;
+        return 4;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,121 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.codec.LengthField;
+import org.sample.nio.buffer.codec.LengthFieldFrameDecoder;
+import org.sample.nio.buffer.codec.LengthFieldFrameEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+
+public class FrameCodecTest {
+
+    private ByteBufferQueue createQ(int bufSize) {
+        return new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(bufSize, 16));
+    }
+
+    @org.junit.Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(42);
+
+        for (LengthField field : LengthField.values()) {
+            int max = Math.min(field.getMaxLength(), 100000);
+            LengthFieldFrameEncoder encoder = new LengthFieldFrameEncoder(field, max);
+            LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(field, max);
+            ByteBufferQueue q = createQ(64);
+
+            IntStream.of(0, 1, 127, 128, 255, max).forEach(length -> {
+                byte[] payload = new byte[length];
+                random.nextBytes(payload);
+
+                //Feed frame byte by byte, it is only decoded once complete.
+                ByteBuffer frame = encoder.encode(ByteBuffer.wrap(payload));
+                Assert.assertEquals(field.sizeOf(length) + length, frame.remaining());
+                for (int i = 0; i < frame.limit() - 1; i++) {
+                    q.equeue(frame.array(), i, 1);
+                    if (i < field.getMaxSize() || length > 0) {
+                        Assert.assertNull(field + " should wait for whole frame.", decoder.decode(q));
+                    }
+                }
+                q.equeue(frame.array(), frame.limit() - 1, 1);
+
+                ByteBuffer decoded = decoder.decode(q);
+                byte[] bytes = new byte[decoded.remaining()];
+                decoded.get(bytes);
+                Assert.assertArrayEquals(field + " payload of " + length, payload, bytes);
+                Assert.assertTrue(q.isEmpty());
+
+                Assert.assertEquals(frame.remaining(), encoder.encode(ByteBuffer.wrap(payload), q));
+                Assert.assertEquals(frame, q.dequeue());
+            });
+        }
+    }
+
+    @org.junit.Test
+    public void testZeroCopy() throws Exception {
+        ByteBufferQueue q = createQ(4096);
+        LengthFieldFrameEncoder encoder = new LengthFieldFrameEncoder(LengthField.INT16, 1024);
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(LengthField.INT16, 1024);
+
+        ByteBuffer payload = ByteBuffer.wrap("payload".getBytes());
+        encoder.encode(payload, q);
+        encoder.encode(payload, q);
+        Assert.assertEquals("Encoder should not consume payload.", 7, payload.remaining());
+
+        ByteBuffer first = decoder.decode(q);
+        Assert.assertTrue("Payload should be a view of queue.", first.isReadOnly());
+        Assert.assertEquals(payload, first);
+        Assert.assertEquals(payload, decoder.decode(q));
+        Assert.assertNull(decoder.decode(q));
+    }
+
+    //Connections served by different workers share one encoder.
+    @org.junit.Test
+    public void testSharedEncoder() throws Exception {
+        LengthFieldFrameEncoder encoder = new LengthFieldFrameEncoder(LengthField.VARINT, 1 << 20);
+        LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(LengthField.VARINT, 1 << 20);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int length = 100 << (t * 4); //Length fields of 1 to 3 bytes.
+                results.add(pool.submit(() -> {
+                    ByteBufferQueue q = createQ(4096);
+                    ByteBuffer payload = ByteBuffer.allocate(length);
+                    for (int i = 0; i < 500; i++) {
+                        encoder.encode(payload, q);
+                        ByteBuffer decoded = decoder.decode(q);
+                        if (decoded == null || decoded.remaining() != length || !q.isEmpty()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue("Length fields should not be mixed up.", result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @org.junit.Test(expected = IllegalStateException.class)
+    public void testMaxFrameSize() throws Exception {
+        ByteBufferQueue q = createQ(64);
+        byte[] header = {(byte) 0xE8, 0x07}; //Varint of 1000, frame is rejected before its payload arrives.
+        q.equeue(header, 0, header.length);
+
+        new LengthFieldFrameDecoder(LengthField.VARINT, 999).decode(q);
+    }
+}
@@ -0,0 +1,66 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.metrics.Histogram;
+
+
+public class HistogramTest {
+
+    @org.junit.Test
+    public void testPercentiles() throws Exception {
+        Histogram histogram = new Histogram();
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(10000, snapshot.getCount());
+
+        for (double p : new double[]{50, 90, 99, 99.9, 100}) {
+            double expected = p / 100 * 10000 * 1000;
+            long actual = snapshot.getValueAtPercentile(p);
+            Assert.assertTrue("p" + p + " " + actual, actual >= expected && actual <= expected * 1.0625);
+        }
+        Assert.assertEquals(5_000_500, snapshot.getMean(), 5_000_500 * 0.0625);
+    }
+
+    @org.junit.Test
+    public void testSmallAndHugeValues() throws Exception {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(-1);
+        histogram.record(31);
+        histogram.record(Long.MAX_VALUE);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(0, snapshot.getValueAtPercentile(50));
+        Assert.assertEquals("Values below 32 should be exact.", 31, snapshot.getValueAtPercentile(75));
+        Assert.assertEquals("Overflow should be reported as 2^40.", 1L << 40, snapshot.getMax());
+
+        Histogram.Snapshot merged = snapshot.merge(snapshot);
+        Assert.assertEquals(8, merged.getCount());
+        Assert.assertEquals(31, merged.getValueAtPercentile(75));
+    }
+
+    @org.junit.Test
+    public void testConcurrentRecording() throws Exception {
+        Histogram histogram = new Histogram(4);
+        Thread[] threads = new Thread[6];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int v = 0; v < 10000; v++) {
+                    histogram.record(v % 16);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals("Stripes should be summed up.", 60000, snapshot.getCount());
+        Assert.assertEquals(15, snapshot.getMax());
+        Assert.assertEquals(7.5, snapshot.getMean(), 0.001);
+    }
+}
@@ -0,0 +1,77 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.IByteBufferPool;
+import org.sample.nio.buffer.codec.TextLineEncoder;
+import org.sample.nio.buffer.codec.TextLineViewDecoder;
+import org.sample.nio.echo.server.EchoStage;
+import org.sample.nio.pipeline.DecoderStage;
+import org.sample.nio.pipeline.EncoderStage;
+import org.sample.nio.pipeline.IStage;
+import org.sample.nio.pipeline.PipelineFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+
+public class PipelineTest {
+
+    private static final IByteBufferPool pool = ByteBufferPoolFactory.newByteBufferPool(64, 16);
+    private static final Supplier<IByteBufferPool> POOL = () -> pool;
+
+    private static final IStage[] ECHO = {
+            new DecoderStage<>(() -> new TextLineViewDecoder(StandardCharsets.UTF_8)),
+            new EncoderStage<>(() -> new TextLineEncoder(StandardCharsets.UTF_8)),
+            EchoStage.INSTANCE
+    };
+
+    @org.junit.Test
+    public void testEcho() throws Exception {
+        PipelineFactory factory = new PipelineFactory(POOL, ECHO);
+        IHandler first = factory.createHandler(), second = factory.createHandler();
+
+        enqueue(first.getInputQ(), "one\ntwo\nthr");
+        enqueue(second.getInputQ(), "other\n");
+        first.handle();
+        second.handle();
+
+        Assert.assertEquals("one\ntwo\n", dequeue(first.getOutputQ()));
+        Assert.assertEquals("other\n", dequeue(second.getOutputQ()));
+
+        enqueue(first.getInputQ(), "ee\n");
+        first.handle();
+        Assert.assertEquals("Partial line should be kept by state of its own pipeline.", "three\n", dequeue(first.getOutputQ()));
+    }
+
+    @org.junit.Test
+    public void testFlushPolicy() throws Exception {
+        IHandler handler = new PipelineFactory(POOL, FlushPolicy.everyMessages(2), ECHO).createHandler();
+
+        enqueue(handler.getInputQ(), "1\n2\n3\n");
+        handler.handle();
+        Assert.assertEquals("1\n2\n", dequeue(handler.getOutputQ()));
+
+        handler.handle();
+        Assert.assertEquals("3\n", dequeue(handler.getOutputQ()));
+    }
+
+    @org.junit.Test(expected = IllegalStateException.class)
+    public void testUnconsumed() throws Exception {
+        IHandler handler = new PipelineFactory(POOL,
+                new DecoderStage<>(() -> new TextLineViewDecoder(StandardCharsets.UTF_8))).createHandler();
+
+        enqueue(handler.getInputQ(), "dropped\n");
+        handler.handle();
+    }
+
+    private static void enqueue(ByteBufferQueue q, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        q.equeue(bytes, 0, bytes.length);
+    }
+
+    private static String dequeue(ByteBufferQueue q) {
+        return q.isEmpty() ? "" : new String(q.dequeue().array(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferLeakDetector;
+import org.sample.nio.buffer.IByteBufferPool;
+import org.sample.nio.buffer.PooledByteBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class PooledByteBufferTest {
+
+    private AtomicInteger released = new AtomicInteger();
+
+    private IByteBufferPool pool = new IByteBufferPool() {
+        @Override
+        public ByteBuffer acquire() {
+            return ByteBuffer.allocate(64);
+        }
+
+        @Override
+        public void release(ByteBuffer buf) {
+            released.incrementAndGet();
+        }
+    };
+
+    @org.junit.Test
+    public void testRetainRelease() throws Exception {
+        PooledByteBuffer buf = pool.acquirePooled(64);
+
+        Assert.assertEquals(2, buf.retain().refCnt());
+        Assert.assertFalse(buf.release());
+        Assert.assertEquals(0, released.get());
+
+        Assert.assertTrue("Last release should return buffer to its pool.", buf.release());
+        Assert.assertEquals(1, released.get());
+    }
+
+    @org.junit.Test
+    public void testDoubleRelease() throws Exception {
+        PooledByteBuffer buf = pool.acquirePooled(64);
+        buf.release();
+
+        try {
+            buf.release();
+            Assert.fail("Double release should be rejected.");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Buffer should be returned to its pool once.", 1, released.get());
+        }
+
+        try {
+            buf.buffer();
+            Assert.fail("Released buffer should not be accessible.");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @org.junit.Test
+    public void testLeakDetection() throws Exception {
+        ByteBufferLeakDetector detector = new ByteBufferLeakDetector(100);
+
+        new PooledByteBuffer(pool.acquire(), pool, detector).release();
+        new PooledByteBuffer(pool.acquire(), pool, detector); //Leaked
+
+        for (int i = 0; i < 20 && detector.getLeaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+            detector.poll();
+        }
+        Assert.assertEquals("Only the unreleased buffer should be reported.", 1, detector.getLeaks());
+
+        ByteBufferLeakDetector off = new ByteBufferLeakDetector(0);
+        Assert.assertNull("Nothing should be tracked with sampling off.", off.track(new Object()));
+    }
+}
@@ -0,0 +1,408 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.echo.server.EchoHandler;
+import org.sample.nio.echo.server.EchoHandlerFactory;
+import org.sample.nio.metrics.MetricsSnapshot;
+
+import javax.management.ObjectName;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ReactorTest {
+
+    @org.junit.Test
+    public void testBind() throws Exception {
+        Reactor reactor = new Reactor(2, Reactor.Balance.ROUND_ROBIN, Reactor.ExecutionMode.INLINE);
+        reactor.start();
+
+        List<ServerSocketChannel> listeners = reactor.bind(
+                new InetSocketAddress("127.0.0.1", 0), new EchoHandlerFactory(), 128, 2);
+        InetSocketAddress address = (InetSocketAddress) listeners.get(0).getLocalAddress();
+
+        try {
+            for (ServerSocketChannel listener : listeners) {
+                Assert.assertEquals("Listeners should share their address.", address, listener.getLocalAddress());
+            }
+
+            echo(address, 8);
+        } finally {
+            for (ServerSocketChannel listener : listeners) {
+                listener.close();
+            }
+            reactor.stop();
+        }
+    }
+
+    @org.junit.Test
+    public void testBootstrap() throws Exception {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .handlerFactory(new EchoHandlerFactory(FlushPolicy.everyMessages(1)))
+                .bufferPool(() -> ByteBufferPoolFactory.newByteBufferPool(16, 16))
+                .loops(1)
+                .workers(2)
+                .backlog(16)
+                .option(StandardSocketOptions.SO_REUSEADDR, true)
+                .childOption(StandardSocketOptions.TCP_NODELAY, true)
+                .childOption(StandardSocketOptions.SO_KEEPALIVE, true);
+
+        Reactor reactor = bootstrap.newReactor();
+        reactor.start();
+        ServerSocketChannel listener = bootstrap.bind(reactor, new InetSocketAddress("127.0.0.1", 0)).get(0);
+
+        try {
+            echo((InetSocketAddress) listener.getLocalAddress(), 2);
+
+            //Bytes written are counted once write returns, which may be after the client got them.
+            MetricsSnapshot metrics = reactor.getMetrics();
+            for (int i = 0; i < 100 && metrics.getBytesWritten() < metrics.getBytesRead(); i++) {
+                Thread.sleep(10);
+                metrics = reactor.getMetrics();
+            }
+            Assert.assertEquals("connection 0\nconnection 1\n".length(), metrics.getBytesRead());
+            Assert.assertEquals(metrics.getBytesRead(), metrics.getBytesWritten());
+            Assert.assertTrue(metrics.getSelects() > 0);
+            Assert.assertTrue(metrics.getHandleTime().getCount() > 0);
+            Assert.assertTrue(metrics.getQueueDelay().getCount() > 0);
+
+            ObjectName name = reactor.registerMBean("test");
+            try {
+                Assert.assertEquals(metrics.getBytesRead(),
+                        ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesRead"));
+            } finally {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } finally {
+            listener.close();
+            reactor.stop();
+        }
+    }
+
+    @org.junit.Test(expected = UnsupportedOperationException.class)
+    public void testUnsupportedChildOption() throws Exception {
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        try {
+            new ServerBootstrap()
+                    .handlerFactory(new EchoHandlerFactory())
+                    .childOption(StandardSocketOptions.IP_MULTICAST_LOOP, true)
+                    .bind(reactor, new InetSocketAddress("127.0.0.1", 0));
+        } finally {
+            reactor.stop();
+        }
+    }
+
+    @org.junit.Test
+    public void testStop() throws Exception {
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        reactor.start();
+        ServerSocketChannel listener = reactor.bind(new InetSocketAddress("127.0.0.1", 0), new EchoHandlerFactory());
+        InetSocketAddress address = (InetSocketAddress) listener.getLocalAddress();
+
+        try (SocketChannel sc = SocketChannel.open(address)) {
+            echo(address, 1);
+            reactor.stop();
+
+            Assert.assertFalse("Listener should be closed.", listener.isOpen());
+            sc.socket().setSoTimeout(5000);
+            Assert.assertEquals("Connection should be closed by server.", -1, sc.socket().getInputStream().read());
+        }
+
+        //Port is free again.
+        try (ServerSocketChannel again = ServerSocketChannel.open()) {
+            again.bind(address);
+        }
+    }
+
+    @org.junit.Test
+    public void testStopNotStarted() throws Exception {
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        ServerSocketChannel listener = reactor.bind(new InetSocketAddress("127.0.0.1", 0), new EchoHandlerFactory());
+
+        reactor.stop();
+        Assert.assertFalse("Listener should be closed.", listener.isOpen());
+    }
+
+    @org.junit.Test
+    public void testIdleTimeout() throws Exception {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .handlerFactory(new EchoHandlerFactory())
+                .loops(1)
+                .idleTimeouts(300, 0, TimeUnit.MILLISECONDS);
+
+        Reactor reactor = bootstrap.newReactor();
+        reactor.start();
+        ServerSocketChannel listener = bootstrap.bind(reactor, new InetSocketAddress("127.0.0.1", 0)).get(0);
+
+        try (SocketChannel sc = SocketChannel.open(listener.getLocalAddress())) {
+            long start = System.nanoTime();
+            sc.socket().setSoTimeout(5000);
+
+            Assert.assertEquals("Idle connection should be closed by server.", -1,
+                    sc.socket().getInputStream().read());
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assert.assertTrue("Closed after " + elapsed + " ms.", elapsed >= 250 && elapsed < 2000);
+        } finally {
+            listener.close();
+            reactor.stop();
+        }
+    }
+
+    //A handler factory failing for one connection drops only that connection.
+    @org.junit.Test
+    public void testFailingHandlerFactory() throws Exception {
+        AtomicInteger nCreated = new AtomicInteger();
+        IOHandlerFactory factory = new IOHandlerFactory() {
+            @Override
+            public IHandler createHandler() {
+                if (nCreated.getAndIncrement() == 0) {
+                    throw new IllegalStateException("first handler fails.");
+                }
+                return new EchoHandler();
+            }
+        };
+
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        reactor.start();
+        ServerSocketChannel listener = reactor.bind(new InetSocketAddress("127.0.0.1", 0), factory);
+        InetSocketAddress address = (InetSocketAddress) listener.getLocalAddress();
+
+        try {
+            try (SocketChannel sc = SocketChannel.open(address)) {
+                sc.socket().setSoTimeout(5000);
+                Assert.assertEquals("Connection should be closed by server.", -1, sc.socket().getInputStream().read());
+            }
+
+            echo(address, 2);
+            Assert.assertTrue("Listener should still be open.", listener.isOpen());
+        } finally {
+            reactor.stop();
+        }
+    }
+
+    //Output of a client not reading is written partially, a single worker keeps serving others meanwhile.
+    @org.junit.Test
+    public void testPartialWrites() throws Exception {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .handlerFactory(new EchoHandlerFactory())
+                .loops(1)
+                .workers(1)
+                .writeSpinCount(1)
+                .waterMark(new WaterMark(8 * 1024, 32 * 1024))
+                .childOption(StandardSocketOptions.SO_SNDBUF, 4096);
+
+        Reactor reactor = bootstrap.newReactor();
+        reactor.start();
+        ServerSocketChannel listener = bootstrap.bind(reactor, new InetSocketAddress("127.0.0.1", 0)).get(0);
+        InetSocketAddress address = (InetSocketAddress) listener.getLocalAddress();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 25000; i++) {
+            lines.append(String.format("%07d\n", i));
+        }
+        byte[] sent = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+        try (SocketChannel sc = SocketChannel.open()) {
+            sc.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            sc.connect(address);
+
+            //Writes block once server stops reading, its output is pending.
+            Future<?> writer = executor.submit(() -> sc.write(ByteBuffer.wrap(sent)));
+            Thread.sleep(300);
+
+            executor.submit(() -> {
+                echo(address, 1);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+
+            byte[] received = new byte[sent.length];
+            sc.socket().setSoTimeout(10000);
+            InputStream in = sc.socket().getInputStream();
+            for (int n = 0, nr; n < received.length; n += nr) {
+                Assert.assertTrue("Connection should not be closed.", (nr = in.read(received, n, received.length - n)) > 0);
+            }
+            writer.get(5, TimeUnit.SECONDS);
+            Assert.assertArrayEquals("All lines should be echoed in order.", sent, received);
+        } finally {
+            executor.shutdown();
+            listener.close();
+            reactor.stop();
+        }
+    }
+
+    private static class ThreadRecordingFactory extends IOHandlerFactory {
+
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        private final boolean blocking;
+
+        ThreadRecordingFactory(boolean blocking) {
+            this.blocking = blocking;
+        }
+
+        @Override
+        public IHandler createHandler() {
+            return new EchoHandler() {
+                @Override
+                public void handle() {
+                    threads.add(Thread.currentThread());
+                    super.handle();
+                }
+
+                @Override
+                public boolean isBlocking() {
+                    return blocking;
+                }
+            };
+        }
+    }
+
+    @org.junit.Test
+    public void testInlineMode() throws Exception {
+        Reactor reactor = new Reactor(1, 2, Reactor.Balance.ROUND_ROBIN, Reactor.ExecutionMode.INLINE);
+        reactor.start();
+
+        ThreadRecordingFactory inline = new ThreadRecordingFactory(false);
+        ThreadRecordingFactory blocking = new ThreadRecordingFactory(true);
+        ServerSocketChannel listener = reactor.bind(new InetSocketAddress("127.0.0.1", 0), inline);
+        ServerSocketChannel blockingListener = reactor.bind(new InetSocketAddress("127.0.0.1", 0), blocking);
+
+        try {
+            echo((InetSocketAddress) listener.getLocalAddress(), 4);
+            Assert.assertEquals("Handlers should run on their selector loop.", 1, inline.threads.size());
+            Assert.assertEquals("Nothing should be offloaded to workers.", 0,
+                    reactor.getMetrics().getQueueDelay().getCount());
+
+            echo((InetSocketAddress) blockingListener.getLocalAddress(), 2);
+            Assert.assertTrue("Blocking handlers should be offloaded.",
+                    Collections.disjoint(blocking.threads, inline.threads));
+            Assert.assertTrue(reactor.getMetrics().getQueueDelay().getCount() > 0);
+        } finally {
+            reactor.stop();
+        }
+    }
+
+    //Registrations from several threads while the loop is parked share wakeups, every one of them is accounted.
+    @org.junit.Test
+    public void testCoalescedWakeups() throws Exception {
+        Reactor reactor = new Reactor(1, Reactor.Balance.ROUND_ROBIN);
+        reactor.start();
+        Thread.sleep(100); //Loop parks in select.
+
+        List<SocketChannel> clients = registerConcurrently(reactor, 4, 25);
+        try {
+            MetricsSnapshot metrics = reactor.getMetrics();
+
+            Assert.assertEquals("Each registration should wake up the loop or piggyback on a wakeup.",
+                    100, metrics.getWakeups() + metrics.getSavedWakeups());
+            Assert.assertTrue("The parked loop should be woken up.", metrics.getWakeups() > 0);
+            Assert.assertTrue("A wakeup should only be paid for a parked loop.",
+                    metrics.getWakeups() <= metrics.getSelects());
+        } finally {
+            for (SocketChannel sc : clients) {
+                sc.close();
+            }
+            reactor.stop();
+        }
+    }
+
+    //Channels queued by other threads are registered by their loop and served afterwards.
+    @org.junit.Test
+    public void testPendingRegistrations() throws Exception {
+        Reactor reactor = new Reactor(2, Reactor.Balance.ROUND_ROBIN);
+        reactor.start();
+
+        try {
+            List<SocketChannel> clients = registerConcurrently(reactor, 4, 25);
+            MetricsSnapshot metrics = reactor.getMetrics();
+            Assert.assertEquals("Registrations should be drained.", 0, metrics.getPendingRegistrations());
+            Assert.assertEquals(100, metrics.getNumOfChannels());
+
+            for (SocketChannel sc : clients) {
+                sc.write(ByteBuffer.wrap("registered\n".getBytes(StandardCharsets.UTF_8)));
+                ByteBuffer echo = ByteBuffer.allocate("registered\n".length());
+                while (echo.hasRemaining() && sc.read(echo) > -1)
+                    ;
+                Assert.assertEquals("registered\n", new String(echo.array(), StandardCharsets.UTF_8));
+                sc.close();
+            }
+        } finally {
+            reactor.stop();
+        }
+    }
+
+    /*
+      Register accepted echo connections to reactor directly from several threads, and wait until its loops drain
+      their registration queues. Returns client sides of them.
+     */
+    private static List<SocketChannel> registerConcurrently(Reactor reactor, int nThreads, int nPerThread) throws Exception {
+        List<SocketChannel> clients = new ArrayList<>();
+        List<SocketChannel> accepted = new ArrayList<>();
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress("127.0.0.1", 0), nThreads * nPerThread);
+            for (int i = 0; i < nThreads * nPerThread; i++) {
+                clients.add(SocketChannel.open(listener.getLocalAddress()));
+                accepted.add(listener.accept());
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                List<SocketChannel> mine = accepted.subList(t * nPerThread, (t + 1) * nPerThread);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (SocketChannel sc : mine) {
+                        reactor.registerChannel(sc, new EchoHandler());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < 500 && reactor.getMetrics().getPendingRegistrations() > 0; i++) {
+            Thread.sleep(10);
+        }
+        return clients;
+    }
+
+    private static void echo(InetSocketAddress address, int numOfConnections) throws Exception {
+        for (int i = 0; i < numOfConnections; i++) {
+            try (SocketChannel sc = SocketChannel.open(address)) {
+                String line = "connection " + i + "\n";
+                sc.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+
+                ByteBuffer echo = ByteBuffer.allocate(line.length());
+                while (echo.hasRemaining() && sc.read(echo) > -1)
+                    ;
+                Assert.assertEquals(line, new String(echo.array(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferLeakDetector;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.IByteBufferPool;
+import org.sample.nio.buffer.SlabByteBufferPool;
+import org.sample.nio.buffer.ThreadLocalByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+
+public class SlabByteBufferPoolTest {
+
+    private static final int MB = 1 << 20;
+
+    @org.junit.Test
+    public void testSizeClasses() throws Exception {
+        IByteBufferPool pool = ByteBufferPoolFactory.newDirectByteBufferPool(1024, 64 * 1024, 8 * MB);
+
+        Assert.assertEquals(1024, pool.acquire().capacity());
+
+        IntStream.of(1, 64, 65, 1000, 1025, 4096, 64 * 1024).forEach(sz -> {
+            ByteBuffer buf = pool.acquire(sz);
+
+            Assert.assertTrue("Buffer should be direct.", buf.isDirect());
+            Assert.assertTrue("Buffer should hold requested bytes.", buf.capacity() >= sz);
+            Assert.assertEquals("Capacity should be a power of two.", 1, Integer.bitCount(buf.capacity()));
+            Assert.assertTrue("Capacity should be the smallest fit class.", buf.capacity() < 2 * Math.max(sz, 64));
+            Assert.assertEquals(buf.capacity(), buf.remaining());
+        });
+    }
+
+    @org.junit.Test
+    public void testRecycle() throws Exception {
+        IByteBufferPool pool = ByteBufferPoolFactory.newDirectByteBufferPool(1024, 64 * 1024, 8 * MB);
+
+        ByteBuffer buf = pool.acquire(4096);
+        buf.putInt(42);
+        pool.release(buf);
+
+        //Free list is FIFO, drain the rest of the slab until the released buffer shows up again.
+        ByteBuffer again = null;
+        for (int i = 0; i < MB / 4096 && again != buf; i++) {
+            again = pool.acquire(4096);
+        }
+        Assert.assertSame(buf, again);
+        Assert.assertEquals("Recycled buffer should be cleared.", 0, again.position());
+    }
+
+    @org.junit.Test
+    public void testMemoryCap() throws Exception {
+        IByteBufferPool pool = ByteBufferPoolFactory.newDirectByteBufferPool(1024, 1024 * 1024, 2 * MB);
+
+        Assert.assertTrue(pool.acquire(1024).isDirect());
+        Assert.assertTrue(pool.acquire(4096).isDirect());
+
+        ByteBuffer overCap = pool.acquire(8192);
+        Assert.assertFalse("Pool should fall back to heap once its cap is reached.", overCap.isDirect());
+        Assert.assertTrue(overCap.capacity() >= 8192);
+
+        ByteBuffer overSize = pool.acquire(2 * MB);
+        Assert.assertFalse("Request beyond largest size class should get a heap buffer.", overSize.isDirect());
+
+        pool.release(overCap); //Heap buffers are not pooled.
+        Assert.assertFalse(pool.acquire(8192).isDirect());
+    }
+
+    @org.junit.Test
+    public void testDoubleRelease() throws Exception {
+        SlabByteBufferPool pool = ByteBufferPoolFactory.newDirectByteBufferPool(1024, 64 * 1024, 8 * MB);
+
+        ByteBuffer buf = pool.acquire(4096);
+        pool.release(buf);
+        pool.release(buf);
+        pool.release(ByteBuffer.allocateDirect(4096));
+        Assert.assertEquals("Buffers not handed out should be rejected.", 2, pool.getRejects());
+
+        //Whole slab of the class, the released buffer must show up once only.
+        Set<ByteBuffer> acquired = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < MB / 4096; i++) {
+            Assert.assertTrue("A buffer should not be handed out twice.", acquired.add(pool.acquire(4096)));
+        }
+        Assert.assertTrue(acquired.contains(buf));
+    }
+
+    //A thread's magazine in front of the pool must not cache a buffer twice.
+    @org.junit.Test
+    public void testDoubleReleaseThroughMagazine() throws Exception {
+        SlabByteBufferPool slab = ByteBufferPoolFactory.newDirectByteBufferPool(1024, 64 * 1024, 8 * MB);
+        ThreadLocalByteBufferPool pool = ByteBufferPoolFactory.newThreadLocalByteBufferPool(slab, 1024, 4, 2);
+
+        ByteBuffer buf = pool.acquire();
+        pool.release(buf);
+        pool.release(buf);
+        Assert.assertEquals("Buffer released twice should be dropped by magazine.", 1, pool.getRejects());
+
+        Assert.assertSame(buf, pool.acquire());
+        Assert.assertNotSame("A buffer should not be handed out twice.", buf, pool.acquire());
+
+        //Handed out from magazine, it is held again and goes back to the slab once.
+        slab.release(buf);
+        slab.release(buf);
+        Assert.assertEquals(2, slab.getRejects());
+    }
+
+    //Pool does not keep buffers it handed out reachable, leak detection sees segments of a dropped queue.
+    @org.junit.Test
+    public void testDroppedQueueIsReported() throws Exception {
+        IByteBufferPool pool = ByteBufferPoolFactory.newDirectByteBufferPool(1024, 64 * 1024, 8 * MB);
+        ByteBufferLeakDetector detector = ByteBufferLeakDetector.getDefault();
+        long before = detector.getLeaks();
+
+        //Enough segments for a few to be sampled at the default rate of 1 percent.
+        for (int i = 0; i < 3000; i++) {
+            new ByteBufferQueue(() -> pool).equeue(new byte[]{1}, 0, 1);
+        }
+
+        for (int i = 0; i < 50 && detector.getLeaks() == before; i++) {
+            System.gc();
+            Thread.sleep(20);
+            detector.poll();
+        }
+        Assert.assertTrue("Segments of a dropped queue should be reported.", detector.getLeaks() > before);
+    }
+}
@@ -0,0 +1,62 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ByteBufferQueue;
+import org.sample.nio.buffer.codec.TextLineEncoder;
+import org.sample.nio.buffer.codec.TextLineViewDecoder;
+
+import java.nio.charset.StandardCharsets;
+
+
+public class TextLineCodecTest {
+
+    private ByteBufferQueue createQ(int bufSize) {
+        return new ByteBufferQueue(() -> ByteBufferPoolFactory.newByteBufferPool(bufSize, 16));
+    }
+
+    @org.junit.Test
+    public void testViewDecoder() throws Exception {
+        ByteBufferQueue q = createQ(8);
+        TextLineViewDecoder decoder = new TextLineViewDecoder(StandardCharsets.UTF_8);
+
+        byte[] bytes = "a line across segments\ncafé 中文\n\npartial".getBytes(StandardCharsets.UTF_8);
+        q.equeue(bytes, 0, bytes.length);
+
+        Assert.assertEquals("a line across segments", decoder.decode(q).toString());
+        Assert.assertEquals("café 中文", decoder.decode(q).toString());
+        Assert.assertEquals("", decoder.decode(q).toString());
+        Assert.assertNull(decoder.decode(q));
+        Assert.assertEquals("partial".length(), q.size());
+
+        CharSequence first = decoder.decode(with(q, " line\n"));
+        Assert.assertEquals("partial line", first.toString());
+        Assert.assertSame("View should be reused.", first, decoder.decode(with(q, "next\n")));
+    }
+
+    @org.junit.Test
+    public void testEncoder() throws Exception {
+        ByteBufferQueue q = createQ(8);
+        TextLineEncoder encoder = new TextLineEncoder(StandardCharsets.UTF_8);
+
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longLine.append("0123456789");
+        }
+        String[] lines = {"ascii", "café 中文", "ends with delimiter\n", "", longLine + "é"};
+
+        for (String line : lines) {
+            String expected = line.endsWith("\n") ? line : line + "\n";
+            int n = encoder.encode(line, q);
+
+            Assert.assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, n);
+            Assert.assertEquals(expected, new String(q.dequeue(n).array(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ByteBufferQueue with(ByteBufferQueue q, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        q.equeue(bytes, 0, bytes.length);
+        return q;
+    }
+}
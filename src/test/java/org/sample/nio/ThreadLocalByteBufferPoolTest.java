@@ -0,0 +1,61 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+import org.sample.nio.buffer.ByteBufferPoolFactory;
+import org.sample.nio.buffer.ThreadLocalByteBufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+public class ThreadLocalByteBufferPoolTest {
+
+    private static final int BUF_SZ = 512, MAG_SZ = 4;
+
+    private ThreadLocalByteBufferPool createPool() {
+        return ByteBufferPoolFactory.newThreadLocalByteBufferPool(
+                ByteBufferPoolFactory.newByteBufferPool(BUF_SZ, 16), BUF_SZ, MAG_SZ, 2);
+    }
+
+    @org.junit.Test
+    public void testLocalHits() throws Exception {
+        ThreadLocalByteBufferPool pool = createPool();
+
+        ByteBuffer buf = pool.acquire();
+        Assert.assertEquals(1, pool.getDepotMisses());
+
+        pool.release(buf);
+        Assert.assertSame("Released buffer should be served from thread's magazine.", buf, pool.acquire());
+        Assert.assertEquals(1, pool.getLocalHits());
+
+        ByteBuffer big = pool.acquire(BUF_SZ * 2);
+        pool.release(big); //Foreign size bypasses magazines.
+        Assert.assertEquals(1, pool.getLocalHits());
+    }
+
+    @org.junit.Test
+    public void testDepotExchange() throws Exception {
+        ThreadLocalByteBufferPool pool = createPool();
+
+        //Release more than a magazine on another thread, so a full one reaches depot.
+        List<ByteBuffer> released = new ArrayList<>();
+        CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < MAG_SZ + 1; i++) {
+                ByteBuffer buf = pool.acquire();
+                released.add(buf);
+            }
+            released.forEach(pool::release);
+        }).get();
+
+        ByteBuffer buf = pool.acquire();
+        Assert.assertEquals(1, pool.getDepotHits());
+        Assert.assertTrue("Buffer should come from the magazine released by the other thread.", released.contains(buf));
+
+        for (int i = 1; i < MAG_SZ; i++) {
+            pool.acquire();
+        }
+        Assert.assertEquals(MAG_SZ - 1, pool.getLocalHits());
+    }
+}
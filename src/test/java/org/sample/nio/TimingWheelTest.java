@@ -0,0 +1,66 @@
+package org.sample.nio;
+
+import org.junit.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class TimingWheelTest {
+
+    private static final long TICK = 100;
+
+    @org.junit.Test
+    public void testExpire() throws Exception {
+        TimingWheel wheel = new TimingWheel(8, TICK, 0);
+        List<ChannelWrapper> expired = new ArrayList<>();
+
+        ChannelWrapper soon = new ChannelWrapper(null, null);
+        ChannelWrapper later = new ChannelWrapper(null, null);
+        ChannelWrapper cancelled = new ChannelWrapper(null, null);
+        ChannelWrapper nextRound = new ChannelWrapper(null, null);
+
+        wheel.schedule(soon, 150);
+        wheel.schedule(later, 450);
+        wheel.schedule(cancelled, 150);
+        wheel.schedule(nextRound, 8 * TICK + 150); //Shares bucket of soon.
+        wheel.cancel(cancelled);
+        Assert.assertEquals(3, wheel.size());
+
+        wheel.advance(199, expired::add);
+        Assert.assertTrue("Timer should not fire before its deadline.", expired.isEmpty());
+
+        wheel.advance(200, expired::add);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertSame(soon, expired.get(0));
+
+        wheel.advance(10 * TICK, expired::add);
+        Assert.assertEquals(3, expired.size());
+        Assert.assertTrue(expired.contains(later));
+        Assert.assertTrue("Timer of a later round should fire once the wheel gets there.", expired.contains(nextRound));
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    @org.junit.Test
+    public void testReschedule() throws Exception {
+        TimingWheel wheel = new TimingWheel(8, TICK, 0);
+        ChannelWrapper wrapper = new ChannelWrapper(null, null);
+        int[] fired = {0};
+
+        wheel.schedule(wrapper, 250);
+        wheel.schedule(wrapper, 550);
+        Assert.assertEquals("Re-scheduling should replace timer.", 1, wheel.size());
+
+        //Callback re-schedules into a tick already passed, it fires on next advance rather than being lost.
+        wheel.advance(600, w -> {
+            fired[0]++;
+            wheel.schedule(w, 0);
+        });
+        Assert.assertEquals(1, fired[0]);
+        Assert.assertEquals(1, wheel.size());
+
+        wheel.advance(700, w -> fired[0]++);
+        Assert.assertEquals(2, fired[0]);
+        Assert.assertTrue(wheel.isEmpty());
+    }
+}